@@ -0,0 +1,276 @@
+package co.markusi.coursera.algorithms.week1;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Percolation which can be opened and queried by many threads at once, without locks.
+ * Open sites are an atomic bitmap. The union-find is one atomic long per site holding the parent index in its low
+ * 32 bits and, on roots, the top and bottom bits above them; roots are linked with CAS in a fixed pseudo-random
+ * priority order, which keeps the forest acyclic, and finds compress paths with CAS as well.
+ * A site's bit is set before it is connected, so of two neighbors opened concurrently at least one sees the other.
+ * Every query reads monotone state: once isOpen, isFull or percolates has returned true it keeps returning true,
+ * and an open() that has returned is visible to every query which starts after it.
+ */
+public class ConcurrentPercolation {
+
+    private static final long CONNECTED_TO_TOP = 1L << 32;
+    private static final long CONNECTED_TO_BOTTOM = 2L << 32;
+    private static final long CONNECTED_TO_BOTH = CONNECTED_TO_TOP | CONNECTED_TO_BOTTOM;
+    private static final long PARENT_MASK = 0xffffffffL;
+
+    private final int n;
+    private final AtomicLongArray openedSites;
+    private final AtomicLongArray unionFind;
+    private final LongAdder numberOfOpenSites;
+    private volatile boolean percolates;
+
+    // create n-by-n grid, with all sites blocked
+    public ConcurrentPercolation(int n) {
+        validate(n);
+        this.n = n;
+        openedSites = new AtomicLongArray((n * n + 63) >>> 6);
+        unionFind = new AtomicLongArray(n * n);
+        numberOfOpenSites = new LongAdder();
+        for (int i = 0; i < n * n; i++) {
+            long status = 0;
+            if (i < n) {
+                status |= CONNECTED_TO_TOP;
+            }
+            if (i >= n * n - n) {
+                status |= CONNECTED_TO_BOTTOM;
+            }
+            unionFind.set(i, status | i);
+        }
+    }
+
+    // open site (row, col) if it is not open already
+    public void open(int row, int col) {
+        validate(row, col);
+        int index = convertToArrayIndex(row, col);
+        if (!openSite(index)) {
+            return;
+        }
+        numberOfOpenSites.increment();
+        if (row != 1) {
+            connectElements(index, index - n);
+        }
+        if (row != n) {
+            connectElements(index, index + n);
+        }
+        if (col != 1) {
+            connectElements(index, index - 1);
+        }
+        if (col != n) {
+            connectElements(index, index + 1);
+        }
+        if ((rootStatus(index) & CONNECTED_TO_BOTH) == CONNECTED_TO_BOTH) {
+            percolates = true;
+        }
+    }
+
+    // is site (row, col) open?
+    public boolean isOpen(int row, int col) {
+        validate(row, col);
+        return isSiteOpened(convertToArrayIndex(row, col));
+    }
+
+    // is site (row, col) full?
+    public boolean isFull(int row, int col) {
+        validate(row, col);
+        int index = convertToArrayIndex(row, col);
+        return isSiteOpened(index) && (rootStatus(index) & CONNECTED_TO_TOP) != 0;
+    }
+
+    // number of open sites; exact once no other thread is opening sites
+    public int numberOfOpenSites() {
+        return numberOfOpenSites.intValue();
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percolates;
+    }
+
+    private void validate(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(String.format("n must be not be <=0, received %d", size));
+        }
+    }
+
+    private void validate(int row, int col) {
+        if (row < 1 || col < 1 || row > n || col > n) {
+            throw new IllegalArgumentException(
+                    String.format("The row and column indices are integers between 1 and n," +
+                            " received row: %1s, column %2s ", row, col));
+        }
+    }
+
+    // set the site's bit and return whether this call was the one to open it
+    private boolean openSite(int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        long current = openedSites.get(word);
+        while ((current & bit) == 0) {
+            if (openedSites.compareAndSet(word, current, current | bit)) {
+                return true;
+            }
+            current = openedSites.get(word);
+        }
+        return false;
+    }
+
+    private boolean isSiteOpened(int index) {
+        return (openedSites.get(index >>> 6) & 1L << index) != 0;
+    }
+
+    private void connectElements(int index, int neighbor) {
+        if (isSiteOpened(neighbor)) {
+            union(index, neighbor);
+        }
+    }
+
+    // status bits of the site's current root, read from an entry which was still a root when read
+    private long rootStatus(int index) {
+        while (true) {
+            int root = find(index);
+            long entry = unionFind.get(root);
+            if (parent(entry) == root) {
+                return entry & CONNECTED_TO_BOTH;
+            }
+        }
+    }
+
+    private int find(int index) {
+        int current = index;
+        while (true) {
+            long entry = unionFind.get(current);
+            int parent = parent(entry);
+            if (parent == current) {
+                return current;
+            }
+            int grandParent = parent(unionFind.get(parent));
+            if (grandParent != parent) {
+                // path halving; losing the race only means the path is not shortened
+                unionFind.compareAndSet(current, entry, grandParent);
+            }
+            current = grandParent;
+        }
+    }
+
+    private void union(int first, int second) {
+        while (true) {
+            int child = find(first);
+            int root = find(second);
+            if (child == root) {
+                return;
+            }
+            if (priority(child) > priority(root)) {
+                int swap = child;
+                child = root;
+                root = swap;
+            }
+            long childEntry = unionFind.get(child);
+            long rootEntry = unionFind.get(root);
+            if (parent(childEntry) != child || parent(rootEntry) != root) {
+                continue;
+            }
+            // publish the child's bits on the root before linking, so the linked component never loses them
+            long childStatus = childEntry & CONNECTED_TO_BOTH;
+            if ((childStatus & ~rootEntry) != 0
+                    && !unionFind.compareAndSet(root, rootEntry, rootEntry | childStatus)) {
+                continue;
+            }
+            if (unionFind.compareAndSet(child, childEntry, root)) {
+                if (((childStatus | rootEntry) & CONNECTED_TO_BOTH) == CONNECTED_TO_BOTH) {
+                    percolates = true;
+                }
+                return;
+            }
+        }
+    }
+
+    private static int parent(long entry) {
+        return (int) (entry & PARENT_MASK);
+    }
+
+    // fixed pseudo-random order in which roots are linked, a bijection of the index
+    private static int priority(int index) {
+        int h = index * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private int convertToArrayIndex(int row, int col) {
+        return (row - 1) * n + (col - 1);
+    }
+
+    // unit testing (optional)
+    public static void main(String[] args) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int round = 0; round < 40; round++) {
+            testConcurrentOpens(1 + random.nextInt(256), 4, random.split());
+        }
+        // large grids keep the threads running long enough to be preempted in the middle of unions
+        for (int round = 0; round < 2; round++) {
+            testConcurrentOpens(1000, 4, random.split());
+        }
+    }
+
+    // several threads open random, overlapping sets of sites; afterwards the grid must agree with a Percolation
+    // into which the same sites were opened one by one
+    private static void testConcurrentOpens(int n, int threads, SplittableRandom random)
+            throws InterruptedException {
+        ConcurrentPercolation percolation = new ConcurrentPercolation(n);
+        int[][] sites = new int[threads][];
+        boolean[] opened = new boolean[n * n];
+        for (int t = 0; t < threads; t++) {
+            // each thread opens about 60% / threads of the grid, with some sites shared between threads
+            sites[t] = new int[n * n * 6 / 10 / threads + 1];
+            for (int i = 0; i < sites[t].length; i++) {
+                sites[t][i] = random.nextInt(n * n);
+                opened[sites[t][i]] = true;
+            }
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int[] ownSites = sites[t];
+            workers[t] = new Thread(() -> {
+                awaitQuietly(start);
+                for (int site : ownSites) {
+                    percolation.open(site / n + 1, site % n + 1);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Percolation expected = new Percolation(n);
+        for (int site = 0; site < n * n; site++) {
+            if (opened[site]) {
+                expected.open(site / n + 1, site % n + 1);
+            }
+        }
+        assert percolation.numberOfOpenSites() == expected.numberOfOpenSites();
+        assert percolation.percolates() == expected.percolates();
+        for (int row = 1; row <= n; row++) {
+            for (int col = 1; col <= n; col++) {
+                assert percolation.isOpen(row, col) == expected.isOpen(row, col);
+                assert percolation.isFull(row, col) == expected.isFull(row, col);
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package co.markusi.coursera.algorithms.week1;
+
+import java.util.Arrays;
+
+/**
+ * Union-find over the sites of a percolation grid, backed by one flat int array.
+ * A non-negative entry is the parent of the site, a negative entry marks a root and holds minus the size of its
+ * component. Finds use path halving and unions link by size.
+ * Indices are not validated: callers are expected to pass indices which they have already checked.
+ */
+public class GridUnionFind {
+
+    private final int[] parent;
+
+    // create count singleton components
+    public GridUnionFind(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException(String.format("count must be not be <=0, received %d", count));
+        }
+        parent = new int[count];
+        Arrays.fill(parent, -1);
+    }
+
+    // root of the component containing p
+    public int find(int p) {
+        int current = p;
+        int pathLength = 0;
+        while (parent[current] >= 0) {
+            pathLength++;
+            int next = parent[current];
+            if (parent[next] >= 0) {
+                parent[current] = parent[next];
+            }
+            current = parent[current];
+        }
+        if (PercolationMetrics.ENABLED) {
+            PercolationMetrics.recordFind(pathLength);
+        }
+        return current;
+    }
+
+    // merge the components containing p and q and return the root of the merged component
+    public int union(int p, int q) {
+        return unionRoots(find(p), find(q));
+    }
+
+    // merge the components with the given roots and return the root of the merged component
+    public int unionRoots(int firstRoot, int secondRoot) {
+        if (firstRoot == secondRoot) {
+            return firstRoot;
+        }
+        if (PercolationMetrics.ENABLED) {
+            PercolationMetrics.recordUnion();
+        }
+        // sizes are stored negated, so the larger component has the smaller entry
+        if (parent[firstRoot] > parent[secondRoot]) {
+            parent[secondRoot] += parent[firstRoot];
+            parent[firstRoot] = secondRoot;
+            return secondRoot;
+        }
+        parent[firstRoot] += parent[secondRoot];
+        parent[secondRoot] = firstRoot;
+        return firstRoot;
+    }
+
+    // number of sites in the component with the given root
+    public int size(int root) {
+        return -parent[root];
+    }
+
+    // make every site a singleton again
+    public void resetAll() {
+        Arrays.fill(parent, -1);
+    }
+
+    // make p a singleton again; only valid once every site in its component is being reset as well
+    public void reset(int p) {
+        parent[p] = -1;
+    }
+}
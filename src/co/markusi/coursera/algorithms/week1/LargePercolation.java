@@ -0,0 +1,233 @@
+package co.markusi.coursera.algorithms.week1;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Percolation for grids too large for int indices and Java arrays, e.g. 100000-by-100000.
+ * Open sites are kept in a bitset and the union-find in a single long per site, both off the heap and optionally
+ * memory-mapped, so the grid can be backed by the page cache instead of the heap.
+ * A union-find entry above zero is the parent index + 1; an entry of zero or below marks a root and holds
+ * minus ((size - 1) << 2 | top and bottom bits), so freshly allocated zeroed storage needs no initialisation.
+ * Like Percolation, there are no virtual sites and isFull() has no backwash.
+ * close() releases the storage and deletes any files created for it.
+ */
+public class LargePercolation implements Closeable {
+
+    private static final long CONNECTED_TO_TOP = 1;
+    private static final long CONNECTED_TO_BOTTOM = 2;
+    private static final long CONNECTED_TO_BOTH = CONNECTED_TO_TOP | CONNECTED_TO_BOTTOM;
+    private static final int STATUS_BITS = 2;
+
+    private final int n;
+    private final OffHeapLongArray openedSites;
+    private final OffHeapLongArray unionFind;
+    private long numberOfOpenSites;
+    private boolean percolates;
+
+    // create n-by-n grid in direct memory, with all sites blocked
+    public LargePercolation(int n) {
+        validate(n);
+        this.n = n;
+        long sites = (long) n * n;
+        openedSites = new OffHeapLongArray(wordCount(sites));
+        unionFind = new OffHeapLongArray(sites);
+    }
+
+    // create n-by-n grid backed by two new memory-mapped files in directory, with all sites blocked;
+    // the files get unique names, so several grids can share a directory
+    public LargePercolation(int n, Path directory) {
+        validate(n);
+        this.n = n;
+        long sites = (long) n * n;
+        openedSites = mapNewFile(wordCount(sites), directory, "percolation-open");
+        try {
+            unionFind = mapNewFile(sites, directory, "percolation-union-find");
+        } catch (RuntimeException e) {
+            openedSites.close();
+            throw e;
+        }
+    }
+
+    // open site (row, col) if it is not open already
+    public void open(int row, int col) {
+        validate(row, col);
+        long index = convertToIndex(row, col);
+        if (isSiteOpened(index)) {
+            return;
+        }
+        long word = index >>> 6;
+        openedSites.set(word, openedSites.get(word) | 1L << index);
+        numberOfOpenSites++;
+
+        long status = 0;
+        if (row == 1) {
+            status |= CONNECTED_TO_TOP;
+        }
+        if (row == n) {
+            status |= CONNECTED_TO_BOTTOM;
+        }
+        // a blocked site is always a singleton root
+        unionFind.set(index, -status);
+
+        long root = index;
+        if (row != 1) {
+            root = connectElements(root, index - n);
+        }
+        if (row != n) {
+            root = connectElements(root, index + n);
+        }
+        if (col != 1) {
+            root = connectElements(root, index - 1);
+        }
+        if (col != n) {
+            root = connectElements(root, index + 1);
+        }
+        if ((status(unionFind.get(root)) & CONNECTED_TO_BOTH) == CONNECTED_TO_BOTH) {
+            percolates = true;
+        }
+    }
+
+    // is site (row, col) open?
+    public boolean isOpen(int row, int col) {
+        validate(row, col);
+        return isSiteOpened(convertToIndex(row, col));
+    }
+
+    // is site (row, col) full?
+    public boolean isFull(int row, int col) {
+        validate(row, col);
+        long index = convertToIndex(row, col);
+        return isSiteOpened(index) && (status(unionFind.get(find(index))) & CONNECTED_TO_TOP) != 0;
+    }
+
+    // number of open sites
+    public long numberOfOpenSites() {
+        return numberOfOpenSites;
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percolates;
+    }
+
+    // release the storage and delete its files; the grid must not be used afterwards
+    @Override
+    public void close() {
+        try {
+            unionFind.close();
+        } finally {
+            openedSites.close();
+        }
+    }
+
+    private void validate(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(String.format("n must be not be <=0, received %d", size));
+        }
+    }
+
+    private void validate(int row, int col) {
+        if (row < 1 || col < 1 || row > n || col > n) {
+            throw new IllegalArgumentException(
+                    String.format("The row and column indices are integers between 1 and n," +
+                            " received row: %1s, column %2s ", row, col));
+        }
+    }
+
+    private boolean isSiteOpened(long index) {
+        return (openedSites.get(index >>> 6) & 1L << index) != 0;
+    }
+
+    private long connectElements(long root, long neighbor) {
+        if (!isSiteOpened(neighbor)) {
+            return root;
+        }
+        long neighborRoot = find(neighbor);
+        if (neighborRoot == root) {
+            return root;
+        }
+        long rootEntry = -unionFind.get(root);
+        long neighborEntry = -unionFind.get(neighborRoot);
+        long size = (rootEntry >>> STATUS_BITS) + (neighborEntry >>> STATUS_BITS) + 2;
+        long merged = (size - 1) << STATUS_BITS | status(-rootEntry) | status(-neighborEntry);
+        if (rootEntry < neighborEntry) {
+            unionFind.set(root, neighborRoot + 1);
+            unionFind.set(neighborRoot, -merged);
+            return neighborRoot;
+        }
+        unionFind.set(neighborRoot, root + 1);
+        unionFind.set(root, -merged);
+        return root;
+    }
+
+    // root of the site's component, with path halving
+    private long find(long index) {
+        long current = index;
+        long parent = unionFind.get(current);
+        while (parent > 0) {
+            long next = parent - 1;
+            long grandParent = unionFind.get(next);
+            if (grandParent > 0) {
+                unionFind.set(current, grandParent);
+                current = grandParent - 1;
+                parent = unionFind.get(current);
+            } else {
+                return next;
+            }
+        }
+        return current;
+    }
+
+    private long status(long rootEntry) {
+        return -rootEntry & CONNECTED_TO_BOTH;
+    }
+
+    private long convertToIndex(int row, int col) {
+        return (long) (row - 1) * n + (col - 1);
+    }
+
+    private static OffHeapLongArray mapNewFile(long length, Path directory, String prefix) {
+        Path file;
+        try {
+            file = Files.createTempFile(directory, prefix, ".bin");
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to create a file in %s", directory), e);
+        }
+        try {
+            return new OffHeapLongArray(length, file);
+        } catch (RuntimeException e) {
+            file.toFile().delete();
+            throw e;
+        }
+    }
+
+    private long wordCount(long sites) {
+        return (sites + 63) >>> 6;
+    }
+
+    // unit testing (optional)
+    public static void main(String[] args) throws IOException {
+        testDirectoryReuse();
+    }
+
+    // a new grid in a directory that already holds grids starts blocked, and closing a grid removes its files
+    private static void testDirectoryReuse() throws IOException {
+        Path directory = Files.createTempDirectory("percolation");
+        LargePercolation first = new LargePercolation(4, directory);
+        first.open(1, 1);
+        LargePercolation second = new LargePercolation(4, directory);
+        assert !second.isOpen(1, 1);
+        assert second.numberOfOpenSites() == 0;
+        first.close();
+        second.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            assert files.count() == 0;
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,129 @@
+package co.markusi.coursera.algorithms.week1;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Zero-initialised array of longs indexed by long, stored outside of the heap.
+ * The array is split into segments of at most 1 GiB, each either a direct buffer or a memory-mapped region of a file,
+ * so its length is not limited by the maximum size of a Java array.
+ * A mapped file belongs to the array: it is emptied when the array is created and deleted by close().
+ */
+public class OffHeapLongArray implements Closeable {
+
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_LENGTH = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_LENGTH - 1;
+
+    private final long length;
+    private final LongBuffer[] segments;
+    // the buffers behind segments, kept so that close() can release them
+    private final ByteBuffer[] buffers;
+    private final Path file;
+
+    // allocate length longs in direct memory
+    public OffHeapLongArray(long length) {
+        validate(length);
+        this.length = length;
+        this.file = null;
+        segments = new LongBuffer[segmentCount(length)];
+        buffers = new ByteBuffer[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(segmentBytes(i)).order(ByteOrder.nativeOrder());
+            segments[i] = buffers[i].asLongBuffer();
+        }
+    }
+
+    // map length longs from file, which is created, or truncated if it exists, so the array reads as zeros
+    public OffHeapLongArray(long length, Path file) {
+        validate(length);
+        this.length = length;
+        this.file = file;
+        segments = new LongBuffer[segmentCount(length)];
+        buffers = new ByteBuffer[segments.length];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < segments.length; i++) {
+                // the mapping stays valid after the channel is closed
+                buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * SEGMENT_LENGTH * Long.BYTES,
+                        segmentBytes(i))
+                        .order(ByteOrder.nativeOrder());
+                segments[i] = buffers[i].asLongBuffer();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to map %s", file), e);
+        }
+    }
+
+    // number of longs in the array
+    public long length() {
+        return length;
+    }
+
+    // value at index; the index is not validated
+    public long get(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+    }
+
+    // set the value at index; the index is not validated
+    public void set(long index, long value) {
+        segments[(int) (index >>> SEGMENT_SHIFT)].put((int) (index & SEGMENT_MASK), value);
+    }
+
+    // release the memory or mappings and delete the mapped file; the array must not be used afterwards
+    @Override
+    public void close() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = null;
+            if (buffers[i] != null) {
+                release(buffers[i]);
+                buffers[i] = null;
+            }
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Unable to delete %s", file), e);
+            }
+        }
+    }
+
+    // unmap a mapped buffer, or free a direct one, now rather than when it is collected;
+    // the buffer and every view of it must not be used afterwards
+    public static void release(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8 has no invokeCleaner; the buffer is then released when it is collected
+        }
+    }
+
+    private void validate(long length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException(String.format("length must be not be <=0, received %d", length));
+        }
+    }
+
+    private int segmentCount(long length) {
+        return (int) ((length + SEGMENT_LENGTH - 1) >>> SEGMENT_SHIFT);
+    }
+
+    private int segmentBytes(int segment) {
+        return (int) (Math.min(SEGMENT_LENGTH, length - segment * SEGMENT_LENGTH) * Long.BYTES);
+    }
+}
@@ -1,33 +1,60 @@
 package co.markusi.coursera.algorithms.week1;
 
-import edu.princeton.cs.algs4.WeightedQuickUnionUF;
+import java.util.Arrays;
 
 public class Percolation {
 
-    private final WeightedQuickUnionUF unionFind;
+    // per site state bits; the top and bottom bits are only meaningful on component roots
+    private static final byte OPEN = 1;
+    private static final byte CONNECTED_TO_TOP = 2;
+    private static final byte CONNECTED_TO_BOTTOM = 4;
+    private static final byte CONNECTED_TO_BOTH = CONNECTED_TO_TOP | CONNECTED_TO_BOTTOM;
+    private static final int INITIAL_STACK_SIZE = 16;
+
+    private final GridUnionFind unionFind;
     private final int n;
-    private final boolean[] openedSites;
-    private final int startVirtualSiteIndex;
-    private final int endVirtualSiteIndex;
+    private final byte[] siteStates;
+    // bit (row - 1) * n + (col - 1) is set once site (row, col) is full; null unless full sites are tracked
+    private final long[] fullSites;
+    private int[] floodStack;
     private int numberOfOpenSites;
+    private boolean percolates;
 
     // create n-by-n grid, with all sites blocked
     public Percolation(int n) {
+        this(n, false);
+    }
+
+    // create n-by-n grid, with all sites blocked; when trackFullSites is set, full sites are kept in a bitmap
+    // which is updated by flood fill as sites open, so that isFull() is a single bit test
+    public Percolation(int n, boolean trackFullSites) {
         validate(n);
         this.n = n;
-        startVirtualSiteIndex = 0;
-        endVirtualSiteIndex = n * n + 1;
         numberOfOpenSites = 0;
-        openedSites = new boolean[n * n];
-        // + 2 for virtual indexes
-        unionFind = new WeightedQuickUnionUF(n * n + 2);
+        siteStates = new byte[n * n];
+        unionFind = new GridUnionFind(n * n);
+        if (trackFullSites) {
+            fullSites = new long[(n * n + 63) >>> 6];
+            floodStack = new int[INITIAL_STACK_SIZE];
+        } else {
+            fullSites = null;
+        }
     }
 
     // open site (row, col) if it is not open already
     public void open(int row, int col) {
         validate(row, col);
         if (openSite(row, col)) {
-            connectWithNeighbors(row, col);
+            if (PercolationMetrics.ENABLED) {
+                PercolationMetrics.recordOpen();
+            }
+            int root = connectWithNeighbors(row, col);
+            if ((siteStates[root] & CONNECTED_TO_BOTH) == CONNECTED_TO_BOTH) {
+                percolates = true;
+            }
+            if (fullSites != null && (siteStates[root] & CONNECTED_TO_TOP) != 0) {
+                fillFullSites(convertToArrayIndex(row, col));
+            }
         }
     }
 
@@ -40,7 +67,11 @@ public class Percolation {
     // is site (row, col) full?
     public boolean isFull(int row, int col) {
         validate(row, col);
-        return isOpen(row, col) && unionFind.connected(startVirtualSiteIndex, convertToUFIndex(row, col));
+        if (fullSites != null) {
+            return isSiteFull(convertToArrayIndex(row, col));
+        }
+        return isSiteOpened(row, col)
+                && (siteStates[unionFind.find(convertToArrayIndex(row, col))] & CONNECTED_TO_TOP) != 0;
     }
 
     // number of open sites
@@ -50,14 +81,39 @@ public class Percolation {
 
     // does the system percolate?
     public boolean percolates() {
-        return unionFind.connected(startVirtualSiteIndex, endVirtualSiteIndex);
+        return percolates;
+    }
+
+    // copy the full sites into mask, bit (row - 1) * n + (col - 1) of the words being set for site (row, col)
+    public void copyFullSites(long[] mask) {
+        int words = (n * n + 63) >>> 6;
+        if (mask == null || mask.length < words) {
+            throw new IllegalArgumentException(String.format("mask must hold at least %d words", words));
+        }
+        if (fullSites != null) {
+            System.arraycopy(fullSites, 0, mask, 0, words);
+            return;
+        }
+        Arrays.fill(mask, 0, words, 0L);
+        for (int index = 0; index < n * n; index++) {
+            if ((siteStates[index] & OPEN) != 0 && (siteStates[unionFind.find(index)] & CONNECTED_TO_TOP) != 0) {
+                mask[index >>> 6] |= 1L << index;
+            }
+        }
     }
 
 
     private boolean openSite(int row, int col) {
         int index = convertToArrayIndex(row, col);
-        if (!openedSites[index]) {
-            openedSites[index] = true;
+        if ((siteStates[index] & OPEN) == 0) {
+            byte state = OPEN;
+            if (row == 1) {
+                state |= CONNECTED_TO_TOP;
+            }
+            if (row == n) {
+                state |= CONNECTED_TO_BOTTOM;
+            }
+            siteStates[index] = state;
             numberOfOpenSites++;
             return true;
         }
@@ -65,12 +121,12 @@ public class Percolation {
     }
 
     private boolean isSiteOpened(int row, int col) {
-        return openedSites[convertToArrayIndex(row, col)];
+        return (siteStates[convertToArrayIndex(row, col)] & OPEN) != 0;
     }
 
     private void validate(int size) {
         if (size <= 0) {
-            throw new IllegalArgumentException(String.format("n must be not be <=0, received %d", n));
+            throw new IllegalArgumentException(String.format("n must be not be <=0, received %d", size));
         }
     }
 
@@ -82,66 +138,83 @@ public class Percolation {
         }
     }
 
-    private void connectWithNeighbors(int row, int col) {
-        if (row == 1) {
-            connectWithVirtualSite(row, col);
-            // only connect with bottom
-            if (row != n) {
-                connectWithBottom(row, col);
+    // connect the freshly opened site with its open neighbors and return the root of its component
+    private int connectWithNeighbors(int row, int col) {
+        int index = convertToArrayIndex(row, col);
+        int root = index;
+        if (row != 1) {
+            root = connectElements(root, index - n);
+        }
+        if (row != n) {
+            root = connectElements(root, index + n);
+        }
+        if (col != 1) {
+            root = connectElements(root, index - 1);
+        }
+        if (col != n) {
+            root = connectElements(root, index + 1);
+        }
+        return root;
+    }
+
+    // union which merges the top and bottom bits into the new root; the root of the opened site is cached
+    // by the caller, so each neighbor costs a single find
+    private int connectElements(int root, int neighbor) {
+        if ((siteStates[neighbor] & OPEN) == 0) {
+            return root;
+        }
+        int neighborRoot = unionFind.find(neighbor);
+        int newRoot = unionFind.unionRoots(root, neighborRoot);
+        siteStates[newRoot] |= (siteStates[root] | siteStates[neighborRoot]) & CONNECTED_TO_BOTH;
+        return newRoot;
+    }
+
+    // the opened site has joined a full component: mark every open site reachable from it which is not full yet;
+    // already full sites stop the fill, so each site is marked at most once over the whole run
+    private void fillFullSites(int index) {
+        int top = 0;
+        markFull(index);
+        floodStack[top++] = index;
+        while (top > 0) {
+            int site = floodStack[--top];
+            int row = site / n;
+            int col = site - row * n;
+            if (row != 0) {
+                top = pushIfFilling(site - n, top);
             }
-        } else if (row == n) {
-            connectWithVirtualSite(row, col);
-            // only connect with top
-            connectWithTop(row, col);
-        } else {
-            connectWithBottom(row, col);
-            connectWithTop(row, col);
-            if (col != 1) {
-                connectWithLeft(row, col);
+            if (row != n - 1) {
+                top = pushIfFilling(site + n, top);
+            }
+            if (col != 0) {
+                top = pushIfFilling(site - 1, top);
             }
-            if (col != n) {
-                connectWithRight(row, col);
+            if (col != n - 1) {
+                top = pushIfFilling(site + 1, top);
             }
         }
     }
 
-    private void connectWithVirtualSite(int row, int col) {
-        int ufIndex = convertToUFIndex(row, col);
-        if (row == 1) {
-            unionFind.union(ufIndex, startVirtualSiteIndex);
+    private int pushIfFilling(int site, int top) {
+        if ((siteStates[site] & OPEN) == 0 || isSiteFull(site)) {
+            return top;
         }
-        if (row == n) {
-            unionFind.union(ufIndex, endVirtualSiteIndex);
+        markFull(site);
+        if (top == floodStack.length) {
+            floodStack = Arrays.copyOf(floodStack, top * 2);
         }
+        floodStack[top] = site;
+        return top + 1;
     }
 
-    private void connectWithBottom(int row, int col) {
-        connectElements(row, col, row + 1, col);
+    private boolean isSiteFull(int index) {
+        return (fullSites[index >>> 6] & 1L << index) != 0;
     }
 
-    private void connectWithTop(int row, int col) {
-        connectElements(row, col, row - 1, col);
-    }
-
-    private void connectWithLeft(int row, int col) {
-        connectElements(row, col, row, col - 1);
-    }
-
-    private void connectWithRight(int row, int col) {
-        connectElements(row, col, row, col + 1);
-    }
-
-    private void connectElements(int firstRow, int firstColumn, int secondRow, int secondColumn) {
-        if (isSiteOpened(secondRow, secondColumn)) {
-            unionFind.union(convertToUFIndex(firstRow, firstColumn), convertToUFIndex(secondRow, secondColumn));
-        }
+    private void markFull(int index) {
+        fullSites[index >>> 6] |= 1L << index;
     }
 
     private int convertToArrayIndex(int row, int col) {
         return (row - 1) * n + (col - 1);
     }
-
-    private int convertToUFIndex(int row, int col) {
-        return convertToArrayIndex(row, col) + 1;
-    }
-}
\ No newline at end of file
+}
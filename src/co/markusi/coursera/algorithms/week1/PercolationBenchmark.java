@@ -0,0 +1,38 @@
+package co.markusi.coursera.algorithms.week1;
+
+import java.util.SplittableRandom;
+
+/**
+ * Times random-fill trials of PercolationTrial with each storage layout.
+ * Usage: PercolationBenchmark n trials [rounds]
+ */
+public class PercolationBenchmark {
+
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int trials = Integer.parseInt(args[1]);
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        PercolationTrial.Layout[] layouts = PercolationTrial.Layout.values();
+        PercolationTrial[] engines = new PercolationTrial[layouts.length];
+        for (int i = 0; i < layouts.length; i++) {
+            engines[i] = new PercolationTrial(n, layouts[i]);
+        }
+        // the first round warms up the JIT; every layout replays the same seeds
+        for (int round = 0; round <= rounds; round++) {
+            for (int i = 0; i < layouts.length; i++) {
+                SplittableRandom random = new SplittableRandom(round);
+                long openSites = 0;
+                long start = System.nanoTime();
+                for (int trial = 0; trial < trials; trial++) {
+                    openSites += engines[i].run(random);
+                }
+                double elapsed = (System.nanoTime() - start) / 1e6;
+                if (round > 0) {
+                    System.out.println(String.format("%-10s n=%d  %10.2f ms/trial  %6.1f ns/open",
+                            layouts[i], n, elapsed / trials, elapsed * 1e6 / openSites));
+                }
+            }
+        }
+    }
+}
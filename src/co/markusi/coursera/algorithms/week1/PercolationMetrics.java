@@ -0,0 +1,112 @@
+package co.markusi.coursera.algorithms.week1;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for opens, unions and finds, and per-trial duration histograms keyed by grid size.
+ * Metrics are enabled with -Dpercolation.metrics=true. Every call site is guarded by the static final ENABLED flag,
+ * which the JIT folds to a constant, so disabled metrics compile away entirely.
+ */
+public final class PercolationMetrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("percolation.metrics");
+
+    // bucket i counts trials which took [2^i, 2^(i+1)) nanoseconds
+    private static final int BUCKETS = 64;
+
+    private static final LongAdder OPENS = new LongAdder();
+    private static final LongAdder UNIONS = new LongAdder();
+    private static final LongAdder FINDS = new LongAdder();
+    private static final LongAdder FIND_PATH_LENGTH = new LongAdder();
+    private static final ConcurrentMap<Integer, AtomicLongArray> TRIAL_NANOS = new ConcurrentHashMap<>();
+
+    private PercolationMetrics() {
+    }
+
+    static void recordOpen() {
+        OPENS.increment();
+    }
+
+    static void recordUnion() {
+        UNIONS.increment();
+    }
+
+    static void recordFind(int pathLength) {
+        FINDS.increment();
+        FIND_PATH_LENGTH.add(pathLength);
+    }
+
+    static void recordTrial(int n, long nanos) {
+        AtomicLongArray histogram = TRIAL_NANOS.computeIfAbsent(n, size -> new AtomicLongArray(BUCKETS));
+        histogram.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+    }
+
+    // number of sites opened
+    public static long opens() {
+        return OPENS.sum();
+    }
+
+    // number of unions which merged two components
+    public static long unions() {
+        return UNIONS.sum();
+    }
+
+    // number of finds
+    public static long finds() {
+        return FINDS.sum();
+    }
+
+    // total number of parent links followed by finds
+    public static long findPathLength() {
+        return FIND_PATH_LENGTH.sum();
+    }
+
+    // clear all counters and histograms
+    public static void reset() {
+        OPENS.reset();
+        UNIONS.reset();
+        FINDS.reset();
+        FIND_PATH_LENGTH.reset();
+        TRIAL_NANOS.clear();
+    }
+
+    // all metrics as a JSON object; histogram buckets are listed by their exclusive upper bound in nanoseconds
+    public static String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"opens\":").append(opens())
+                .append(",\"unions\":").append(unions())
+                .append(",\"finds\":").append(finds())
+                .append(",\"findPathLength\":").append(findPathLength())
+                .append(",\"trialNanos\":{");
+        boolean firstSize = true;
+        for (Map.Entry<Integer, AtomicLongArray> entry : new TreeMap<>(TRIAL_NANOS).entrySet()) {
+            if (!firstSize) {
+                json.append(',');
+            }
+            firstSize = false;
+            AtomicLongArray histogram = entry.getValue();
+            long count = 0;
+            StringBuilder buckets = new StringBuilder();
+            for (int i = 0; i < BUCKETS; i++) {
+                long bucket = histogram.get(i);
+                if (bucket == 0) {
+                    continue;
+                }
+                if (count > 0) {
+                    buckets.append(',');
+                }
+                count += bucket;
+                long upperBound = i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << (i + 1);
+                buckets.append("{\"upperNanos\":").append(upperBound).append(",\"count\":").append(bucket).append('}');
+            }
+            json.append('"').append(entry.getKey()).append("\":{\"count\":").append(count)
+                    .append(",\"buckets\":[").append(buckets).append("]}");
+        }
+        return json.append("}}").toString();
+    }
+}
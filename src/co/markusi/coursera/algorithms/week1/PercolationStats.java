@@ -1,66 +1,201 @@
 package co.markusi.coursera.algorithms.week1;
 
-import edu.princeton.cs.algs4.StdRandom;
-import edu.princeton.cs.algs4.StdStats;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class PercolationStats {
 
     private static final double CONFIDENCE_INTERVAL = 1.96;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    // trials are split into at most this many tasks; the split, and so the order in which partial statistics
+    // are merged, depends only on the number of trials, which keeps results independent of the thread count
+    private static final int MAX_TASKS = 256;
+    // adaptive runs check the confidence interval after every batch, and never stop before MIN_TRIALS
+    private static final int BATCH_SIZE = 64;
+    private static final int MIN_TRIALS = 30;
+    // adaptive runs stop here even when the target width is not reached
+    private static final int MAX_TRIALS = 1 << 20;
 
     private final int n;
     private final int trials;
-    private final double[] openSitesPercentage;
-
-    private double stdDev = 0;
-    private double mean = 0;
+    private final double mean;
+    private final double stdDev;
+    // one engine per worker thread, reused by every trial that thread runs
+    private final ThreadLocal<PercolationTrial> engines = new ThreadLocal<>();
 
     // perform trials independent experiments on an n-by-n grid
     public PercolationStats(int n, int trials) {
+        this(n, trials, new SplittableRandom(), 1);
+    }
+
+    // perform trials independent experiments on an n-by-n grid, seeded from the given generator, so that
+    // a seeded generator reproduces the run while an unseeded one never touches shared random state
+    public PercolationStats(int n, int trials, SplittableRandom random, int parallelism) {
+        this(n, trials, seedFrom(random), parallelism);
+    }
+
+    // perform trials independent experiments on an n-by-n grid, spread over parallelism threads;
+    // the results only depend on the seed, not on the number of threads
+    public PercolationStats(int n, int trials, long seed, int parallelism) {
         validate("n", n);
         validate("trials", trials);
+        validate("parallelism", parallelism);
         this.n = n;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        RunningStatistics statistics;
+        try {
+            statistics = runTrials(pool, seed, 0, trials, null);
+        } finally {
+            pool.shutdown();
+        }
         this.trials = trials;
-        this.openSitesPercentage = new double[trials];
-        runTrials();
+        this.mean = statistics.mean();
+        this.stdDev = statistics.stddev();
+    }
+
+    // perform trials independent experiments on an n-by-n grid, logging every completed trial to checkpoint;
+    // when the log already holds trials of this run, only the missing ones are performed, and the result is the
+    // same as for an uninterrupted run; logged trials at or beyond trials are ignored
+    public PercolationStats(int n, int trials, long seed, int parallelism, Path checkpoint) {
+        validate("n", n);
+        validate("trials", trials);
+        validate("parallelism", parallelism);
+        this.n = n;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (TrialLog log = new TrialLog(checkpoint, n, seed)) {
+            RunningStatistics statistics = runTrials(pool, seed, 0, trials, log);
+            this.trials = trials;
+            this.mean = statistics.mean();
+            this.stdDev = statistics.stddev();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private PercolationStats(int n, double halfWidth, long seed, int parallelism, int maxTrials) {
+        validate("n", n);
+        validate("parallelism", parallelism);
+        validate("maxTrials", maxTrials);
+        if (!(halfWidth > 0)) {
+            throw new IllegalArgumentException(String.format("halfWidth must be > 0, received %f", halfWidth));
+        }
+        this.n = n;
+        RunningStatistics statistics = new RunningStatistics();
+        int completed = 0;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            while (completed < maxTrials && (completed < MIN_TRIALS || halfWidth(statistics) > halfWidth)) {
+                int batchEnd = (int) Math.min((long) completed + BATCH_SIZE, maxTrials);
+                statistics.merge(runTrials(pool, seed, completed, batchEnd, null));
+                completed = batchEnd;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        this.trials = completed;
+        this.mean = statistics.mean();
+        this.stdDev = statistics.stddev();
+    }
+
+    private PercolationStats(int n, RunningStatistics statistics) {
+        this.n = n;
+        this.trials = (int) statistics.count();
+        this.mean = statistics.mean();
+        this.stdDev = statistics.stddev();
+    }
+
+    // combine the trials logged by several runs, e.g. shards of one sweep run with different seeds
+    public static PercolationStats merge(Path... checkpoints) {
+        if (checkpoints.length == 0) {
+            throw new IllegalArgumentException("At least one checkpoint is required.");
+        }
+        int n = 0;
+        RunningStatistics statistics = new RunningStatistics();
+        for (Path checkpoint : checkpoints) {
+            try (TrialLog log = new TrialLog(checkpoint)) {
+                if (n != 0 && log.n() != n) {
+                    throw new IllegalArgumentException(
+                            String.format("%s has n=%d, expected n=%d", checkpoint, log.n(), n));
+                }
+                n = log.n();
+                statistics.merge(log.statistics());
+            }
+        }
+        if (statistics.count() == 0) {
+            throw new IllegalArgumentException("The checkpoints do not contain any trials.");
+        }
+        return new PercolationStats(n, statistics);
+    }
+
+    // keep performing experiments on an n-by-n grid until the 95% confidence interval is at most
+    // halfWidth either side of the mean, or 2^20 experiments have been performed
+    public static PercolationStats withPrecision(int n, double halfWidth, long seed, int parallelism) {
+        return withPrecision(n, halfWidth, seed, parallelism, MAX_TRIALS);
+    }
+
+    // as above, but stop after at most maxTrials experiments
+    public static PercolationStats withPrecision(int n, double halfWidth, long seed, int parallelism,
+                                                 int maxTrials) {
+        return new PercolationStats(n, halfWidth, seed, parallelism, maxTrials);
     }
 
     // sample mean of percolation threshold
     public double mean() {
-        if (mean == 0) {
-            mean = StdStats.mean(openSitesPercentage);
-        }
         return mean;
     }
 
     // sample standard deviation of percolation threshold
     public double stddev() {
-        if (stdDev == 0) {
-            stdDev = StdStats.stddev(openSitesPercentage);
-        }
         return stdDev;
     }
 
     // low  endpoint of 95% confidence interval
     public double confidenceLo() {
-        return mean - CONFIDENCE_INTERVAL * stdDev / Math.sqrt(openSitesPercentage.length);
+        return mean - CONFIDENCE_INTERVAL * stdDev / Math.sqrt(trials);
     }
 
     // high endpoint of 95% confidence interval
     public double confidenceHi() {
-        return mean + CONFIDENCE_INTERVAL * stdDev / Math.sqrt(openSitesPercentage.length);
+        return mean + CONFIDENCE_INTERVAL * stdDev / Math.sqrt(trials);
+    }
+
+    // number of experiments performed
+    public int trials() {
+        return trials;
     }
 
     // test client
     public static void main(String[] args) {
         int n = Integer.parseInt(args[0]);
-        int trials = Integer.parseInt(args[1]);
 
-        PercolationStats percolationStats = new PercolationStats(n, trials);
+        PercolationStats percolationStats;
+        if (args.length > 2) {
+            int parallelism = Integer.parseInt(args[2]);
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : new SplittableRandom().nextLong();
+            // a fractional second argument is the target half-width of the confidence interval
+            if (args.length > 4) {
+                percolationStats = new PercolationStats(n, Integer.parseInt(args[1]), seed, parallelism,
+                        Paths.get(args[4]));
+            } else if (args[1].contains(".")) {
+                percolationStats = withPrecision(n, Double.parseDouble(args[1]), seed, parallelism);
+            } else {
+                percolationStats = new PercolationStats(n, Integer.parseInt(args[1]), seed, parallelism);
+            }
+        } else {
+            percolationStats = new PercolationStats(n, Integer.parseInt(args[1]));
+        }
 
+        System.out.println(String.format("trials                  = %d", percolationStats.trials()));
         System.out.println(String.format("mean                    = %f", percolationStats.mean()));
         System.out.println(String.format("stddev                  = %f", percolationStats.stddev()));
         System.out.println(String.format("95%% confidence interval = [%1f, %2f]",
                 percolationStats.confidenceLo(), percolationStats.confidenceHi()));
+        if (PercolationMetrics.ENABLED) {
+            System.out.println(PercolationMetrics.toJson());
+        }
     }
 
     private void validate(String parameterName, int value) {
@@ -69,19 +204,89 @@ public class PercolationStats {
         }
     }
 
-    private void runTrials() {
-        for (int i = 0; i < trials; i++) {
-            Percolation percolation = new Percolation(n);
-            while (!percolation.percolates()) {
-                int row = StdRandom.uniform(n) + 1;
-                int column = StdRandom.uniform(n) + 1;
-                while (percolation.isOpen(row, column)) {
-                    row = StdRandom.uniform(n) + 1;
-                    column = StdRandom.uniform(n) + 1;
-                }
-                percolation.open(row, column);
+    private static long seedFrom(SplittableRandom random) {
+        if (random == null) {
+            throw new IllegalArgumentException("random must not be null");
+        }
+        return random.nextLong();
+    }
+
+    private static double halfWidth(RunningStatistics statistics) {
+        return CONFIDENCE_INTERVAL * statistics.stddev() / Math.sqrt(statistics.count());
+    }
+
+    private RunningStatistics runTrials(ForkJoinPool pool, long seed, int fromTrial, int toTrial, TrialLog log) {
+        int granularity = Math.max(1, (toTrial - fromTrial + MAX_TASKS - 1) / MAX_TASKS);
+        return pool.invoke(new TrialsTask(seed, fromTrial, toTrial, granularity, log));
+    }
+
+    // trials already in the log are not run again but read back from it, so that they are merged in the same
+    // order as in a run without a log; new ones are appended to it
+    private RunningStatistics runTrials(long seed, int fromTrial, int toTrial, TrialLog log) {
+        RunningStatistics statistics = new RunningStatistics();
+        PercolationTrial trial = engines.get();
+        for (int i = fromTrial; i < toTrial; i++) {
+            if (log != null && log.isCompleted(i)) {
+                statistics.add(log.threshold(i));
+                continue;
+            }
+            if (trial == null) {
+                trial = new PercolationTrial(n);
+                engines.set(trial);
+            }
+            long start = PercolationMetrics.ENABLED ? System.nanoTime() : 0;
+            long trialSeed = trialSeed(seed, i);
+            int openSites = trial.run(new SplittableRandom(trialSeed));
+            if (PercolationMetrics.ENABLED) {
+                PercolationMetrics.recordTrial(n, System.nanoTime() - start);
+            }
+            double threshold = 1.0 * openSites / (n * n);
+            statistics.add(threshold);
+            if (log != null) {
+                log.append(i, trialSeed, threshold);
+            }
+        }
+        return statistics;
+    }
+
+    // every trial gets its own stream, derived from the seed and the trial index only
+    private static long trialSeed(long seed, int trial) {
+        long z = seed + (trial + 1) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private class TrialsTask extends RecursiveTask<RunningStatistics> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long seed;
+        private final int fromTrial;
+        private final int toTrial;
+        private final int granularity;
+        private final transient TrialLog log;
+
+        TrialsTask(long seed, int fromTrial, int toTrial, int granularity, TrialLog log) {
+            this.seed = seed;
+            this.fromTrial = fromTrial;
+            this.toTrial = toTrial;
+            this.granularity = granularity;
+            this.log = log;
+        }
+
+        @Override
+        protected RunningStatistics compute() {
+            if (toTrial - fromTrial <= granularity) {
+                return runTrials(seed, fromTrial, toTrial, log);
             }
-            openSitesPercentage[i] = 1.0 * percolation.numberOfOpenSites() / (n * n);
+            int middle = (fromTrial + toTrial) >>> 1;
+            TrialsTask left = new TrialsTask(seed, fromTrial, middle, granularity, log);
+            TrialsTask right = new TrialsTask(seed, middle, toTrial, granularity, log);
+            right.fork();
+            RunningStatistics statistics = left.compute();
+            statistics.merge(right.join());
+            return statistics;
         }
     }
-}
\ No newline at end of file
+}
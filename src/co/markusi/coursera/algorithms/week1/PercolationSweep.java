@@ -0,0 +1,156 @@
+package co.markusi.coursera.algorithms.week1;
+
+import java.util.SplittableRandom;
+
+/**
+ * Spanning probability of an n-by-n grid over every occupation, using the Newman–Ziff method.
+ * Each trial opens sites in one random order; spanning is monotone in the number of open sites,
+ * so the trial is summarised by the number of open sites at which the grid first percolates.
+ */
+public class PercolationSweep {
+
+    // binomial weights smaller than this fraction of the largest one are ignored
+    private static final double WEIGHT_CUTOFF = 1e-16;
+
+    private final int n;
+    private final int numberOfSites;
+    private final PercolationTrial trial;
+    // firstSpanning[k] is the number of trials which first percolated with k open sites
+    private final long[] firstSpanning;
+    private int trials;
+
+    // create an empty sweep for an n-by-n grid
+    public PercolationSweep(int n) {
+        this.trial = new PercolationTrial(n);
+        this.n = n;
+        this.numberOfSites = n * n;
+        this.firstSpanning = new long[numberOfSites + 1];
+    }
+
+    // run one trial, recording the spanning state for every number of open sites
+    public void run(SplittableRandom random) {
+        firstSpanning[trial.run(random)]++;
+        trials++;
+    }
+
+    // add the trials of another sweep over a grid of the same size
+    public void merge(PercolationSweep other) {
+        if (other.n != n) {
+            throw new IllegalArgumentException(
+                    String.format("Sweeps must have the same grid size, received %d and %d", n, other.n));
+        }
+        for (int k = 0; k <= numberOfSites; k++) {
+            firstSpanning[k] += other.firstSpanning[k];
+        }
+        trials += other.trials;
+    }
+
+    // number of trials run or merged into this sweep
+    public int trials() {
+        return trials;
+    }
+
+    // for every k in [0, n*n], the number of trials which percolate with k open sites
+    public long[] spanningCounts() {
+        long[] counts = new long[numberOfSites + 1];
+        long spanning = 0;
+        for (int k = 0; k <= numberOfSites; k++) {
+            spanning += firstSpanning[k];
+            counts[k] = spanning;
+        }
+        return counts;
+    }
+
+    // probability that the grid percolates with exactly openSites open sites
+    public double spanningProbability(int openSites) {
+        if (openSites < 0 || openSites > numberOfSites) {
+            throw new IllegalArgumentException(
+                    String.format("openSites must be between 0 and %d, received %d", numberOfSites, openSites));
+        }
+        checkTrials();
+        long spanning = 0;
+        for (int k = 0; k <= openSites; k++) {
+            spanning += firstSpanning[k];
+        }
+        return 1.0 * spanning / trials;
+    }
+
+    // probability that the grid percolates when every site is open with probability p
+    public double spanningProbability(double p) {
+        return spanningProbabilities(new double[] {p})[0];
+    }
+
+    // spanning probability for every occupation probability in ps, reusing one pass over the counts
+    public double[] spanningProbabilities(double[] ps) {
+        if (ps == null) {
+            throw new IllegalArgumentException("ps must not be null");
+        }
+        for (double p : ps) {
+            if (p < 0 || p > 1 || Double.isNaN(p)) {
+                throw new IllegalArgumentException(String.format("p must be between 0 and 1, received %f", p));
+            }
+        }
+        checkTrials();
+        long[] counts = spanningCounts();
+        double[] probabilities = new double[ps.length];
+        for (int i = 0; i < ps.length; i++) {
+            probabilities[i] = convolve(counts, ps[i]) / trials;
+        }
+        return probabilities;
+    }
+
+    // test client: n trials points [seed]
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int trials = Integer.parseInt(args[1]);
+        int points = Integer.parseInt(args[2]);
+        SplittableRandom random = args.length > 3 ? new SplittableRandom(Long.parseLong(args[3])) : new SplittableRandom();
+
+        PercolationSweep sweep = new PercolationSweep(n);
+        for (int i = 0; i < trials; i++) {
+            sweep.run(random);
+        }
+        double[] ps = new double[points + 1];
+        for (int i = 0; i <= points; i++) {
+            ps[i] = 1.0 * i / points;
+        }
+        double[] probabilities = sweep.spanningProbabilities(ps);
+        for (int i = 0; i <= points; i++) {
+            System.out.println(String.format("%f %f", ps[i], probabilities[i]));
+        }
+    }
+
+    private void checkTrials() {
+        if (trials == 0) {
+            throw new IllegalStateException("No trials have been run.");
+        }
+    }
+
+    // sum of binomial(N, k, p) * counts[k], walking outwards from the mode until the weights vanish
+    private double convolve(long[] counts, double p) {
+        if (p == 0) {
+            return counts[0];
+        }
+        if (p == 1) {
+            return counts[numberOfSites];
+        }
+        int mode = (int) Math.min(numberOfSites, Math.floor((numberOfSites + 1) * p));
+        double ratio = p / (1 - p);
+        double weightSum = 1;
+        double sum = counts[mode];
+
+        double weight = 1;
+        for (int k = mode + 1; k <= numberOfSites && weight > WEIGHT_CUTOFF; k++) {
+            weight *= ratio * (numberOfSites - k + 1) / k;
+            weightSum += weight;
+            sum += weight * counts[k];
+        }
+        weight = 1;
+        for (int k = mode - 1; k >= 0 && weight > WEIGHT_CUTOFF; k--) {
+            weight *= (k + 1) / (ratio * (numberOfSites - k));
+            weightSum += weight;
+            sum += weight * counts[k];
+        }
+        return sum / weightSum;
+    }
+}
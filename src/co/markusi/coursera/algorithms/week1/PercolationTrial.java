@@ -0,0 +1,171 @@
+package co.markusi.coursera.algorithms.week1;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Reusable engine for percolation trials on an n-by-n grid.
+ * Sites are opened in the order of a random permutation of the blocked sites, so every draw opens a new site,
+ * and the grid is reset in time proportional to the number of sites opened by the previous trial.
+ * The open-site and union-find storage is laid out either row by row or in square blocks; with blocks,
+ * all four neighbors of most sites sit on the same or an adjacent cache line, which matters on large grids.
+ */
+public class PercolationTrial {
+
+    // how sites are ordered in the open-site and union-find storage
+    public enum Layout {
+        ROW_MAJOR,
+        BLOCKED
+    }
+
+    // blocks of 16-by-16 sites: 256 bytes of open flags and 1 KiB of union-find entries
+    private static final int BLOCK_SHIFT = 4;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+    // reset by sweeping the whole grid once more than 1/8 of the sites are open
+    private static final int DENSE_RESET_SHIFT = 3;
+
+    private final int n;
+    private final boolean blocked;
+    private final int blocksPerRow;
+    private final int numberOfSites;
+    private final int topVirtualSiteIndex;
+    private final int bottomVirtualSiteIndex;
+    private final boolean[] openedSites;
+    private final GridUnionFind unionFind;
+    // row-major indices of the sites; sites[0..numberOfOpenSites) are open, the rest are blocked
+    private final int[] sites;
+    private int numberOfOpenSites;
+
+    // create an engine for trials on an n-by-n grid, with all sites blocked
+    public PercolationTrial(int n) {
+        this(n, Layout.ROW_MAJOR);
+    }
+
+    // create an engine for trials on an n-by-n grid with the given storage layout, with all sites blocked
+    public PercolationTrial(int n, Layout layout) {
+        if (n <= 0) {
+            throw new IllegalArgumentException(String.format("n must be not be <=0, received %d", n));
+        }
+        this.n = n;
+        blocked = layout == Layout.BLOCKED;
+        blocksPerRow = (n + BLOCK_MASK) >>> BLOCK_SHIFT;
+        numberOfSites = n * n;
+        // blocks on the right and bottom edges are padded with sites which are never opened
+        int storageSize = blocked ? blocksPerRow * blocksPerRow << 2 * BLOCK_SHIFT : numberOfSites;
+        topVirtualSiteIndex = storageSize;
+        bottomVirtualSiteIndex = storageSize + 1;
+        openedSites = new boolean[storageSize];
+        // + 2 for virtual indexes
+        unionFind = new GridUnionFind(storageSize + 2);
+        sites = new int[numberOfSites];
+        for (int i = 0; i < numberOfSites; i++) {
+            sites[i] = i;
+        }
+    }
+
+    // block all sites, open random sites until the system percolates and return the number of open sites
+    public int run(SplittableRandom random) {
+        reset();
+        while (!percolates()) {
+            openRandomSite(random);
+        }
+        return numberOfOpenSites;
+    }
+
+    // number of open sites
+    public int numberOfOpenSites() {
+        return numberOfOpenSites;
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return unionFind.find(topVirtualSiteIndex) == unionFind.find(bottomVirtualSiteIndex);
+    }
+
+    private void openRandomSite(SplittableRandom random) {
+        int next = numberOfOpenSites + random.nextInt(numberOfSites - numberOfOpenSites);
+        int site = sites[next];
+        sites[next] = sites[numberOfOpenSites];
+        sites[numberOfOpenSites] = site;
+        numberOfOpenSites++;
+        if (PercolationMetrics.ENABLED) {
+            PercolationMetrics.recordOpen();
+        }
+        connectWithNeighbors(site);
+    }
+
+    private void connectWithNeighbors(int site) {
+        int row = site / n;
+        int col = site - row * n;
+        int index = storageIndex(row, col);
+        openedSites[index] = true;
+        if (row == 0) {
+            unionFind.union(index, topVirtualSiteIndex);
+        } else {
+            connectElements(index, storageIndex(row - 1, col));
+        }
+        if (row == n - 1) {
+            unionFind.union(index, bottomVirtualSiteIndex);
+        } else {
+            connectElements(index, storageIndex(row + 1, col));
+        }
+        if (col != 0) {
+            connectElements(index, storageIndex(row, col - 1));
+        }
+        if (col != n - 1) {
+            connectElements(index, storageIndex(row, col + 1));
+        }
+    }
+
+    // position of the site in the open-site and union-find storage
+    private int storageIndex(int row, int col) {
+        if (!blocked) {
+            return row * n + col;
+        }
+        int block = (row >>> BLOCK_SHIFT) * blocksPerRow + (col >>> BLOCK_SHIFT);
+        return block << 2 * BLOCK_SHIFT | (row & BLOCK_MASK) << BLOCK_SHIFT | col & BLOCK_MASK;
+    }
+
+    private void connectElements(int site, int neighbor) {
+        if (openedSites[neighbor]) {
+            unionFind.union(site, neighbor);
+        }
+    }
+
+    // only open sites and the virtual sites are ever touched by unions, so only they need resetting;
+    // once a large share of the grid is open, sweeping the arrays in order is cheaper than visiting them at random
+    private void reset() {
+        if (numberOfOpenSites > numberOfSites >>> DENSE_RESET_SHIFT) {
+            Arrays.fill(openedSites, false);
+            unionFind.resetAll();
+            for (int i = 0; i < numberOfSites; i++) {
+                sites[i] = i;
+            }
+            numberOfOpenSites = 0;
+            return;
+        }
+        for (int i = 0; i < numberOfOpenSites; i++) {
+            int site = sites[i];
+            int row = site / n;
+            int index = storageIndex(row, site - row * n);
+            openedSites[index] = false;
+            unionFind.reset(index);
+        }
+        unionFind.reset(topVirtualSiteIndex);
+        unionFind.reset(bottomVirtualSiteIndex);
+        restoreSiteOrder();
+        numberOfOpenSites = 0;
+    }
+
+    // every displaced site lies on a cycle through one of the first numberOfOpenSites positions,
+    // so restoring those cycles brings the permutation back to the identity in O(numberOfOpenSites)
+    private void restoreSiteOrder() {
+        for (int i = 0; i < numberOfOpenSites; i++) {
+            while (sites[i] != i) {
+                int site = sites[i];
+                sites[i] = sites[site];
+                sites[site] = site;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package co.markusi.coursera.algorithms.week1;
+
+/**
+ * Mean and sample variance of a stream of values in O(1) memory, updated with Welford's method.
+ * Two accumulators can be merged with Chan's formula, which gives the statistics of the union of their samples.
+ */
+public class RunningStatistics {
+
+    private long count;
+    private double mean;
+    // sum of squared differences from the current mean
+    private double squaredDeviations;
+
+    // add a sample
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        squaredDeviations += delta * (value - mean);
+    }
+
+    // add all samples of other
+    public void merge(RunningStatistics other) {
+        if (other.count == 0) {
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        squaredDeviations += other.squaredDeviations + delta * delta * count / total * other.count;
+        count = total;
+    }
+
+    // number of samples
+    public long count() {
+        return count;
+    }
+
+    // sample mean; NaN without samples
+    public double mean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    // sample variance; NaN with fewer than two samples
+    public double variance() {
+        return count < 2 ? Double.NaN : squaredDeviations / (count - 1);
+    }
+
+    // sample standard deviation; NaN with fewer than two samples
+    public double stddev() {
+        return Math.sqrt(variance());
+    }
+}
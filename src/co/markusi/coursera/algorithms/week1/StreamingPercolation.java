@@ -0,0 +1,249 @@
+package co.markusi.coursera.algorithms.week1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Decides whether a grid percolates while reading it one row at a time, using Hoshen–Kopelman labelling.
+ * Only the cluster labels of the previous and the current row are kept, so memory is O(n) rather than O(n^2).
+ * The input is the grid size n followed by n rows of n cells, '1' for an open site and '0' for a blocked one;
+ * whitespace between cells and rows is ignored.
+ */
+public class StreamingPercolation {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte CONNECTED_TO_TOP = 1;
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferLength;
+    private int bufferOffset;
+
+    private final int n;
+    private long numberOfOpenSites;
+    private long numberOfClusters;
+    private long numberOfSpanningClusters;
+
+    // labels are shared by the previous row, [0, previousLabelCount), and the new labels of the current row
+    private final int[] previousLabels;
+    private final int[] currentLabels;
+    private final int[] parent;
+    private final byte[] status;
+    private final byte[] compactedStatus;
+    private final int[] stamps;
+    private final int[] compactedLabels;
+    private int previousLabelCount;
+    private int labelCount;
+
+    // read and check the grid from input
+    public StreamingPercolation(InputStream input) {
+        this.input = input;
+        n = readSize();
+        previousLabels = new int[n];
+        currentLabels = new int[n];
+        parent = new int[2 * n];
+        status = new byte[2 * n];
+        compactedStatus = new byte[n];
+        stamps = new int[2 * n];
+        compactedLabels = new int[2 * n];
+        Arrays.fill(previousLabels, -1);
+        for (int row = 0; row < n; row++) {
+            readRow(row);
+            closeClusters(row);
+            compactLabels(row);
+        }
+        countLastRowClusters();
+    }
+
+    // read and check the grid from channel
+    public StreamingPercolation(ReadableByteChannel channel) {
+        this(Channels.newInputStream(channel));
+    }
+
+    // size of the grid
+    public int size() {
+        return n;
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return numberOfSpanningClusters > 0;
+    }
+
+    // number of open sites
+    public long numberOfOpenSites() {
+        return numberOfOpenSites;
+    }
+
+    // number of clusters of connected open sites
+    public long numberOfClusters() {
+        return numberOfClusters;
+    }
+
+    // number of clusters which connect the top row with the bottom row
+    public long numberOfSpanningClusters() {
+        return numberOfSpanningClusters;
+    }
+
+    // test client: checks the grid file given as the first argument
+    public static void main(String[] args) throws IOException {
+        try (InputStream input = Files.newInputStream(Paths.get(args[0]))) {
+            StreamingPercolation percolation = new StreamingPercolation(input);
+            System.out.println(String.format("n                  = %d", percolation.size()));
+            System.out.println(String.format("percolates         = %b", percolation.percolates()));
+            System.out.println(String.format("open sites         = %d", percolation.numberOfOpenSites()));
+            System.out.println(String.format("clusters           = %d", percolation.numberOfClusters()));
+            System.out.println(String.format("spanning clusters  = %d", percolation.numberOfSpanningClusters()));
+        }
+    }
+
+    private void readRow(int row) {
+        for (int i = 0; i < previousLabelCount; i++) {
+            parent[i] = i;
+        }
+        labelCount = previousLabelCount;
+        for (int col = 0; col < n; col++) {
+            if (!readCell(row, col)) {
+                currentLabels[col] = -1;
+                continue;
+            }
+            numberOfOpenSites++;
+            int up = previousLabels[col];
+            int left = col == 0 ? -1 : currentLabels[col - 1];
+            if (up < 0 && left < 0) {
+                parent[labelCount] = labelCount;
+                status[labelCount] = row == 0 ? CONNECTED_TO_TOP : 0;
+                currentLabels[col] = labelCount++;
+            } else if (up >= 0 && left >= 0) {
+                currentLabels[col] = union(up, left);
+            } else {
+                currentLabels[col] = up >= 0 ? up : left;
+            }
+        }
+    }
+
+    // clusters of the previous row which do not continue into the current row are complete
+    private void closeClusters(int row) {
+        int present = 2 * row + 1;
+        int closed = 2 * row + 2;
+        for (int col = 0; col < n; col++) {
+            if (currentLabels[col] >= 0) {
+                stamps[find(currentLabels[col])] = present;
+            }
+        }
+        for (int label = 0; label < previousLabelCount; label++) {
+            int root = find(label);
+            if (stamps[root] != present && stamps[root] != closed) {
+                stamps[root] = closed;
+                numberOfClusters++;
+            }
+        }
+    }
+
+    // relabel the current row with [0, k) so that it can become the previous row
+    private void compactLabels(int row) {
+        int compacted = 2 * row + 2;
+        int count = 0;
+        for (int col = 0; col < n; col++) {
+            if (currentLabels[col] < 0) {
+                previousLabels[col] = -1;
+                continue;
+            }
+            int root = find(currentLabels[col]);
+            if (stamps[root] != compacted) {
+                stamps[root] = compacted;
+                compactedLabels[root] = count;
+                compactedStatus[count] = status[root];
+                count++;
+            }
+            previousLabels[col] = compactedLabels[root];
+        }
+        System.arraycopy(compactedStatus, 0, status, 0, count);
+        previousLabelCount = count;
+    }
+
+    // every cluster left in the last row touches the bottom
+    private void countLastRowClusters() {
+        numberOfClusters += previousLabelCount;
+        for (int label = 0; label < previousLabelCount; label++) {
+            if ((status[label] & CONNECTED_TO_TOP) != 0) {
+                numberOfSpanningClusters++;
+            }
+        }
+    }
+
+    private int find(int label) {
+        int current = label;
+        while (parent[current] != current) {
+            parent[current] = parent[parent[current]];
+            current = parent[current];
+        }
+        return current;
+    }
+
+    private int union(int first, int second) {
+        int firstRoot = find(first);
+        int secondRoot = find(second);
+        if (firstRoot != secondRoot) {
+            parent[secondRoot] = firstRoot;
+            status[firstRoot] |= status[secondRoot];
+        }
+        return firstRoot;
+    }
+
+    private int readSize() {
+        int value = 0;
+        int digits = 0;
+        int next = skipWhitespace();
+        while (next >= '0' && next <= '9') {
+            value = value * 10 + next - '0';
+            digits++;
+            next = read();
+        }
+        if (digits == 0 || value <= 0) {
+            throw new IllegalArgumentException("The input must start with a positive grid size.");
+        }
+        return value;
+    }
+
+    private boolean readCell(int row, int col) {
+        int next = skipWhitespace();
+        if (next == '1') {
+            return true;
+        }
+        if (next == '0') {
+            return false;
+        }
+        throw new IllegalArgumentException(String.format("Expected 0 or 1 at row %d, column %d", row + 1, col + 1));
+    }
+
+    private int skipWhitespace() {
+        int next = read();
+        while (next == ' ' || next == '\n' || next == '\r' || next == '\t') {
+            next = read();
+        }
+        return next;
+    }
+
+    private int read() {
+        if (bufferOffset == bufferLength) {
+            try {
+                bufferLength = input.read(buffer, 0, buffer.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bufferOffset = 0;
+            if (bufferLength <= 0) {
+                bufferLength = 0;
+                return -1;
+            }
+        }
+        return buffer[bufferOffset++];
+    }
+}
@@ -0,0 +1,242 @@
+package co.markusi.coursera.algorithms.week1;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only binary log of completed percolation trials, so that an interrupted run can be resumed.
+ * The file starts with a header (magic, version, n, run seed) followed by fixed-size records of
+ * (trial index, trial seed, threshold). Opening a log replays it into a table of thresholds by trial index;
+ * a record cut short by a crash is dropped. Records are buffered, and a background thread writes any pending ones
+ * once a second, so a crash loses at most the last second of completed trials.
+ * Statistics are always built in trial index order, so they do not depend on the order trials completed in.
+ */
+public class TrialLog implements Closeable {
+
+    private static final int MAGIC = 0x50455243;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES * 3 + Long.BYTES;
+    private static final int RECORD_SIZE = Integer.BYTES + Long.BYTES + Double.BYTES;
+    private static final int BUFFER_RECORDS = 256;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int n;
+    private final long seed;
+    private final BitSet completedTrials;
+    // thresholds[trial] is set for every completed trial
+    private double[] thresholds;
+    // writes pending records once a second; null for a read-only log
+    private final ScheduledExecutorService flusher;
+
+    // open the log for a run with the given grid size and seed, creating it if needed, and replay it
+    public TrialLog(Path file, int n, long seed) {
+        this.file = file;
+        this.buffer = ByteBuffer.allocate(RECORD_SIZE * BUFFER_RECORDS);
+        this.completedTrials = new BitSet();
+        this.thresholds = new double[BUFFER_RECORDS];
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.size() == 0) {
+                writeHeader(n, seed);
+            }
+            ByteBuffer header = readHeader();
+            this.n = header.getInt();
+            this.seed = header.getLong();
+            if (this.n != n || this.seed != seed) {
+                channel.close();
+                throw new IllegalArgumentException(String.format(
+                        "%s belongs to a run with n=%d and seed=%d, not n=%d and seed=%d",
+                        file, this.n, this.seed, n, seed));
+            }
+            replay(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to open %s", file), e);
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "trial-log-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushPending, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // open an existing log read-only, e.g. to merge the logs of several shards; it cannot be appended to
+    public TrialLog(Path file) {
+        this.file = file;
+        this.buffer = ByteBuffer.allocate(RECORD_SIZE * BUFFER_RECORDS);
+        this.completedTrials = new BitSet();
+        this.thresholds = new double[BUFFER_RECORDS];
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            ByteBuffer header = readHeader();
+            this.n = header.getInt();
+            this.seed = header.getLong();
+            replay(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to open %s", file), e);
+        }
+        flusher = null;
+    }
+
+    // grid size of the run
+    public int n() {
+        return n;
+    }
+
+    // seed of the run
+    public long seed() {
+        return seed;
+    }
+
+    // statistics over every trial in the log, added in trial index order
+    public synchronized RunningStatistics statistics() {
+        RunningStatistics statistics = new RunningStatistics();
+        for (int trial = completedTrials.nextSetBit(0); trial >= 0; trial = completedTrials.nextSetBit(trial + 1)) {
+            statistics.add(thresholds[trial]);
+        }
+        return statistics;
+    }
+
+    // threshold of a logged trial
+    public synchronized double threshold(int trial) {
+        if (!completedTrials.get(trial)) {
+            throw new IllegalArgumentException(String.format("trial %d has not been logged", trial));
+        }
+        return thresholds[trial];
+    }
+
+    // has the trial been logged?
+    public synchronized boolean isCompleted(int trial) {
+        return completedTrials.get(trial);
+    }
+
+    // number of trials in the log
+    public synchronized int numberOfCompletedTrials() {
+        return completedTrials.cardinality();
+    }
+
+    // log a completed trial
+    public synchronized void append(int trial, long trialSeed, double threshold) {
+        if (completedTrials.get(trial)) {
+            return;
+        }
+        record(trial, threshold);
+        buffer.putInt(trial).putLong(trialSeed).putDouble(threshold);
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+    }
+
+    // write buffered records to the file
+    public synchronized void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to write %s", file), e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        closeChannel();
+    }
+
+    private synchronized void flushPending() {
+        if (buffer.position() > 0 && channel.isOpen()) {
+            flush();
+        }
+    }
+
+    private synchronized void closeChannel() {
+        try {
+            if (buffer.position() > 0) {
+                flush();
+                channel.force(false);
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to close %s", file), e);
+        }
+    }
+
+    private void record(int trial, double threshold) {
+        if (trial >= thresholds.length) {
+            thresholds = Arrays.copyOf(thresholds, Math.max(trial + 1, 2 * thresholds.length));
+        }
+        completedTrials.set(trial);
+        thresholds[trial] = threshold;
+    }
+
+    private void writeHeader(int n, long seed) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(n).putLong(seed).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    // read the header and return a buffer positioned at n
+    private ByteBuffer readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            continue;
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            channel.close();
+            throw new IllegalArgumentException(String.format("%s is not a trial log", file));
+        }
+        return header;
+    }
+
+    private void replay(boolean writable) throws IOException {
+        long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        long end = HEADER_SIZE + records * RECORD_SIZE;
+        long position = HEADER_SIZE;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            while (buffer.hasRemaining()) {
+                position += channel.read(buffer, position);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                int trial = buffer.getInt();
+                buffer.getLong();
+                double threshold = buffer.getDouble();
+                if (!completedTrials.get(trial)) {
+                    record(trial, threshold);
+                }
+            }
+        }
+        buffer.clear();
+        if (writable) {
+            // drop a partially written record and continue appending after the last complete one
+            channel.truncate(end);
+            channel.position(end);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package co.markusi.coursera.algorithms.week2;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Randomized queue for many producers and consumers, spread over independently locked stripes.
+ * Enqueue goes to a stripe chosen by the calling thread, falling over to the next free stripe when it is busy.
+ * Dequeue and sample pick a stripe with probability proportional to its size, then an item uniformly within it,
+ * so every item is equally likely as long as no other thread changes the stripe sizes in between; concurrent
+ * operations can skew an item's probability by at most their number over the queue size.
+ * size() only reads the per-stripe counts and never locks, so it is approximate under concurrent updates.
+ */
+public class ConcurrentRandomizedQueue<Item> {
+
+    // attempts at a size-weighted pick before falling back to scanning every stripe
+    private static final int WEIGHTED_ATTEMPTS = 4;
+    // the stripe counts are this many ints apart, two 64-byte cache lines, so that threads updating different
+    // stripes never write to the same line, also with adjacent-line prefetching
+    private static final int COUNT_STRIDE = 32;
+
+    private final Stripe<Item>[] stripes;
+    // the count of stripe i is at (i + 1) * COUNT_STRIDE, written only while holding the stripe's lock
+    private final AtomicIntegerArray sizes;
+    private final int mask;
+
+    // construct an empty queue with two stripes per available processor
+    public ConcurrentRandomizedQueue() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    // construct an empty queue with at least the given number of stripes, rounded up to a power of two
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentRandomizedQueue(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException(String.format("stripeCount must be > 0, received %d", stripeCount));
+        }
+        int count = Integer.highestOneBit(stripeCount);
+        if (count < stripeCount) {
+            count <<= 1;
+        }
+        stripes = (Stripe<Item>[]) new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        sizes = new AtomicIntegerArray((count + 2) * COUNT_STRIDE);
+        mask = count - 1;
+    }
+
+    // is the queue empty? approximate under concurrent updates
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // approximate number of items on the queue
+    public int size() {
+        int size = 0;
+        for (int i = 0; i <= mask; i++) {
+            size += count(i);
+        }
+        return size;
+    }
+
+    // add the item
+    public void enqueue(Item item) {
+        if (item == null) {
+            throw new IllegalArgumentException("Null items not supported in this implementation of randomized queue.");
+        }
+        int home = homeStripe();
+        for (int i = 0; i <= mask; i++) {
+            int index = (home + i) & mask;
+            Stripe<Item> stripe = stripes[index];
+            if (stripe.tryLock()) {
+                enqueue(index, stripe, item);
+                return;
+            }
+        }
+        Stripe<Item> stripe = stripes[home];
+        stripe.lock();
+        enqueue(home, stripe, item);
+    }
+
+    // remove and return a random item
+    public Item dequeue() {
+        return take(true);
+    }
+
+    // return a random item (but do not remove it)
+    public Item sample() {
+        return take(false);
+    }
+
+    private void enqueue(int index, Stripe<Item> stripe, Item item) {
+        try {
+            stripe.queue.enqueue(item);
+            setCount(index, stripe.queue.size());
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private Item take(boolean remove) {
+        for (int attempt = 0; attempt < WEIGHTED_ATTEMPTS; attempt++) {
+            int index = weightedStripe();
+            if (index < 0) {
+                break;
+            }
+            Item item = takeFrom(index, remove);
+            if (item != null) {
+                return item;
+            }
+        }
+        // the counts kept changing under us, or the queue looks empty: check every stripe under its lock
+        int start = ThreadLocalRandom.current().nextInt(stripes.length);
+        for (int i = 0; i <= mask; i++) {
+            Item item = takeFrom((start + i) & mask, remove);
+            if (item != null) {
+                return item;
+            }
+        }
+        throw new NoSuchElementException("The randomized queue is empty.");
+    }
+
+    // a stripe picked with probability proportional to its count, or -1 if all counts are zero
+    private int weightedStripe() {
+        int total = size();
+        if (total <= 0) {
+            return -1;
+        }
+        int target = ThreadLocalRandom.current().nextInt(total);
+        for (int i = 0; i <= mask; i++) {
+            target -= count(i);
+            if (target < 0) {
+                return i;
+            }
+        }
+        return mask;
+    }
+
+    private Item takeFrom(int index, boolean remove) {
+        Stripe<Item> stripe = stripes[index];
+        stripe.lock();
+        try {
+            if (stripe.queue.isEmpty()) {
+                return null;
+            }
+            if (!remove) {
+                return stripe.queue.sample();
+            }
+            Item item = stripe.queue.dequeue();
+            setCount(index, stripe.queue.size());
+            return item;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private int count(int stripe) {
+        return sizes.get((stripe + 1) * COUNT_STRIDE);
+    }
+
+    // only called with the stripe's lock held, so a plain volatile write is enough
+    private void setCount(int stripe, int count) {
+        sizes.set((stripe + 1) * COUNT_STRIDE, count);
+    }
+
+    private int homeStripe() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id * 0x9e3779b97f4a7c15L >>> 32);
+        return h & mask;
+    }
+
+    private static final class Stripe<Item> extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient RandomizedQueue<Item> queue = new RandomizedQueue<>();
+    }
+
+    // unit testing (optional)
+    public static void main(String[] args) throws InterruptedException {
+        testSingleThread();
+        testProducersAndConsumers();
+    }
+
+    private static void testSingleThread() {
+        ConcurrentRandomizedQueue<Integer> queue = new ConcurrentRandomizedQueue<>(3);
+        assert queue.stripes.length == 4;
+        assert queue.isEmpty();
+        for (int i = 0; i < 100; i++) {
+            queue.enqueue(i);
+        }
+        assert queue.size() == 100;
+        boolean[] seen = new boolean[100];
+        for (int i = 0; i < 100; i++) {
+            int item = queue.dequeue();
+            assert !seen[item];
+            seen[item] = true;
+        }
+        assert queue.isEmpty();
+        boolean failed = false;
+        try {
+            queue.dequeue();
+        } catch (NoSuchElementException e) {
+            failed = true;
+        }
+        assert failed;
+    }
+
+    // every item enqueued by the producers must be dequeued exactly once
+    private static void testProducersAndConsumers() throws InterruptedException {
+        final int threads = 4;
+        final int itemsPerThread = 100_000;
+        ConcurrentRandomizedQueue<Integer> queue = new ConcurrentRandomizedQueue<>();
+        AtomicIntegerArray dequeued = new AtomicIntegerArray(threads * itemsPerThread);
+        CountDownLatch done = new CountDownLatch(2 * threads);
+        for (int t = 0; t < threads; t++) {
+            final int first = t * itemsPerThread;
+            new Thread(() -> {
+                for (int i = 0; i < itemsPerThread; i++) {
+                    queue.enqueue(first + i);
+                }
+                done.countDown();
+            }).start();
+            new Thread(() -> {
+                int taken = 0;
+                while (taken < itemsPerThread) {
+                    try {
+                        dequeued.incrementAndGet(queue.dequeue());
+                        taken++;
+                    } catch (NoSuchElementException e) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        assert queue.isEmpty();
+        for (int i = 0; i < dequeued.length(); i++) {
+            assert dequeued.get(i) == 1;
+        }
+    }
+}
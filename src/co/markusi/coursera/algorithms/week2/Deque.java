@@ -1,16 +1,29 @@
 package co.markusi.coursera.algorithms.week2;
 
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Deque<Item> implements Iterable<Item> {
 
-    private final SentinelNode<Item> sentinelNode;
+    // the capacity is always a power of two, so indices wrap around with a mask
+    private static final int MIN_CAPACITY = 8;
+
+    // circular buffer; the items are items[head], items[head + 1], ... items[head + size - 1], modulo capacity
+    private Item[] items;
+    private int head;
     private int size;
+    // changes whenever an item is added or removed, so that spliterators can fail fast
+    private int modificationCount;
 
     // construct an empty deque
     public Deque() {
-        sentinelNode = new SentinelNode<>();
+        items = newArray(MIN_CAPACITY);
+        head = 0;
         size = 0;
     }
 
@@ -27,69 +40,57 @@ public class Deque<Item> implements Iterable<Item> {
     // add the item to the front
     public void addFirst(Item item) {
         validateInput(item);
-        Node<Item> newNode = new Node<>(item);
-        newNode.next = sentinelNode.first;
-        if (sentinelNode.first != null) {
-            sentinelNode.first.previous = newNode;
-        }
-        sentinelNode.first = newNode;
-        if (sentinelNode.last == null) {
-            sentinelNode.last = newNode;
+        if (size == items.length) {
+            resize(items.length * 2);
         }
+        head = (head - 1) & (items.length - 1);
+        items[head] = item;
         size++;
+        modificationCount++;
     }
 
     // add the item to the end
     public void addLast(Item item) {
         validateInput(item);
-        Node<Item> newNode = new Node<>(item);
-        newNode.previous = sentinelNode.last;
-        if (sentinelNode.last != null) {
-            sentinelNode.last.next = newNode;
-        } else {
-            sentinelNode.first = newNode;
+        if (size == items.length) {
+            resize(items.length * 2);
         }
-        sentinelNode.last = newNode;
+        items[(head + size) & (items.length - 1)] = item;
         size++;
+        modificationCount++;
     }
 
     // remove and return the item from the front
     public Item removeFirst() {
         checkIfEmpty();
-        Item item = sentinelNode.first.item;
-        sentinelNode.first = sentinelNode.first.next;
-        if (sentinelNode.first != null) {
-            sentinelNode.first.previous = null;
-        }
+        Item item = items[head];
+        items[head] = null;
+        head = (head + 1) & (items.length - 1);
         size--;
-        if (size == 0) {
-            sentinelNode.last = null;
-        }
+        modificationCount++;
+        shrinkIfSparse();
         return item;
     }
 
     // remove and return the item from the end
     public Item removeLast() {
         checkIfEmpty();
-        Item item = sentinelNode.last.item;
-        sentinelNode.last = sentinelNode.last.previous;
-        if (sentinelNode.last != null) {
-            sentinelNode.last.next = null;
-        }
+        int last = (head + size - 1) & (items.length - 1);
+        Item item = items[last];
+        items[last] = null;
         size--;
-        if (size == 0) {
-            sentinelNode.first = null;
-        }
+        modificationCount++;
+        shrinkIfSparse();
         return item;
     }
 
     // return an iterator over items in order from front to end
     public Iterator<Item> iterator() {
         return new Iterator<Item>() {
-            private Node<Item> current = sentinelNode.first;
+            private int offset = 0;
             @Override
             public boolean hasNext() {
-                return current != null;
+                return offset < size;
             }
 
             @Override
@@ -97,9 +98,7 @@ public class Deque<Item> implements Iterable<Item> {
                 if (!hasNext()) {
                     throw new NoSuchElementException("No more items to return.");
                 }
-                Item item = current.item;
-                current = current.next;
-                return item;
+                return get(offset++);
             }
 
             @Override
@@ -109,6 +108,100 @@ public class Deque<Item> implements Iterable<Item> {
         };
     }
 
+    // return a spliterator over items in order from front to end; it splits the range of offsets in half,
+    // so parallel streams divide the work evenly. It binds to the deque's items on first use, not on creation,
+    // and throws ConcurrentModificationException if the deque changes after that
+    @Override
+    public Spliterator<Item> spliterator() {
+        return new OffsetSpliterator(0, -1, 0);
+    }
+
+    // return a sequential stream over items in order from front to end
+    public Stream<Item> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    // return a parallel stream over items in order from front to end
+    public Stream<Item> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    // items at offsets [origin, fence) from the front; a negative fence means not yet bound
+    private final class OffsetSpliterator implements Spliterator<Item> {
+
+        private int origin;
+        private int fence;
+        private int expectedModificationCount;
+
+        private OffsetSpliterator(int origin, int fence, int expectedModificationCount) {
+            this.origin = origin;
+            this.fence = fence;
+            this.expectedModificationCount = expectedModificationCount;
+        }
+
+        private int fence() {
+            if (fence < 0) {
+                fence = size;
+                expectedModificationCount = modificationCount;
+            }
+            return fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Item> action) {
+            int end = fence();
+            if (origin >= end) {
+                return false;
+            }
+            checkForModification();
+            action.accept(get(origin++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Item> action) {
+            int end = fence();
+            Item[] array = items;
+            int first = head;
+            int mask = array.length - 1;
+            for (int offset = origin; offset < end; offset++) {
+                // checked before every item, since a removal nulls a slot inside the range
+                checkForModification();
+                action.accept(array[(first + offset) & mask]);
+            }
+            origin = end;
+            checkForModification();
+        }
+
+        @Override
+        public Spliterator<Item> trySplit() {
+            int end = fence();
+            int middle = (origin + end) >>> 1;
+            if (middle <= origin) {
+                return null;
+            }
+            Spliterator<Item> prefix = new OffsetSpliterator(origin, middle, expectedModificationCount);
+            origin = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence() - origin;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+
+        private void checkForModification() {
+            if (modificationCount != expectedModificationCount) {
+                throw new ConcurrentModificationException("The deque changed during traversal.");
+            }
+        }
+    }
+
     private void validateInput(Item item) {
         if (item == null) {
             throw new IllegalArgumentException("Null items not supported in this implementation of deque.");
@@ -121,19 +214,34 @@ public class Deque<Item> implements Iterable<Item> {
         }
     }
 
-    private static class Node<Item> {
-        private final Item item;
-        private Node<Item> next;
-        private Node<Item> previous;
+    // item at the given offset from the front
+    private Item get(int offset) {
+        return items[(head + offset) & (items.length - 1)];
+    }
+
+    private int capacity() {
+        return items.length;
+    }
 
-        Node(Item item) {
-            this.item = item;
+    private void shrinkIfSparse() {
+        if (items.length > MIN_CAPACITY && size == items.length / 4) {
+            resize(items.length / 2);
         }
     }
 
-    private static class SentinelNode<Item> {
-        private Node<Item> first;
-        private Node<Item> last;
+    // copy the items to the start of a new array, unwrapping them
+    private void resize(int capacity) {
+        Item[] newItems = newArray(capacity);
+        int firstPart = Math.min(size, items.length - head);
+        System.arraycopy(items, head, newItems, 0, firstPart);
+        System.arraycopy(items, 0, newItems, firstPart, size - firstPart);
+        items = newItems;
+        head = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Item> Item[] newArray(int capacity) {
+        return (Item[]) new Object[capacity];
     }
 
     // unit testing (optional)
@@ -144,7 +252,9 @@ public class Deque<Item> implements Iterable<Item> {
         testRemoveFirst();
         testRemoveLast();
         testRemoveMix();
+        testGrowAndShrink();
         testIterator();
+        testStream();
     }
 
     private static void testAddFirst() {
@@ -155,17 +265,10 @@ public class Deque<Item> implements Iterable<Item> {
         deque.addFirst(2);
         deque.addFirst(3);
 
-        Node<Integer> first = deque.sentinelNode.first;
-        Node<Integer> second = first.next;
-        Node<Integer> third = second.next;
-
-        assert first.item == 3;
-        assert first.previous == null;
-        assert second.item == 2;
-        assert second.previous == first;
-        assert third.item == 1;
-        assert third.previous == second;
-        assert third.next == null;
+        assert deque.get(0) == 3;
+        assert deque.get(1) == 2;
+        assert deque.get(2) == 1;
+        assert deque.head == MIN_CAPACITY - 3;
         assert deque.size() == 3;
         assert !deque.isEmpty();
     }
@@ -178,17 +281,10 @@ public class Deque<Item> implements Iterable<Item> {
         deque.addLast(2);
         deque.addLast(3);
 
-        Node<Integer> first = deque.sentinelNode.first;
-        Node<Integer> second = first.next;
-        Node<Integer> third = second.next;
-
-        assert first.item == 1;
-        assert first.previous == null;
-        assert second.item == 2;
-        assert second.previous == first;
-        assert third.item == 3;
-        assert third.previous == second;
-        assert third.next == null;
+        assert deque.get(0) == 1;
+        assert deque.get(1) == 2;
+        assert deque.get(2) == 3;
+        assert deque.head == 0;
         assert deque.size() == 3;
         assert !deque.isEmpty();
     }
@@ -203,23 +299,11 @@ public class Deque<Item> implements Iterable<Item> {
         deque.addFirst(4);
         deque.addLast(5);
 
-        Node<Integer> first = deque.sentinelNode.first;
-        Node<Integer> second = first.next;
-        Node<Integer> third = second.next;
-        Node<Integer> fourth = third.next;
-        Node<Integer> fifth = fourth.next;
-
-        assert first.item == 4;
-        assert first.previous == null;
-        assert second.item == 3;
-        assert second.previous == first;
-        assert third.item == 1;
-        assert third.previous == second;
-        assert fourth.item == 2;
-        assert fourth.previous == third;
-        assert fifth.item == 5;
-        assert fifth.previous == fourth;
-        assert fifth.next == null;
+        assert deque.get(0) == 4;
+        assert deque.get(1) == 3;
+        assert deque.get(2) == 1;
+        assert deque.get(3) == 2;
+        assert deque.get(4) == 5;
         assert deque.size() == 5;
         assert !deque.isEmpty();
     }
@@ -238,8 +322,9 @@ public class Deque<Item> implements Iterable<Item> {
         assert secondRemovedItem == 2;
         assert thirdRemovedItem == 1;
         assert deque.size() == 0;
-        assert deque.sentinelNode.first == null;
-        assert deque.sentinelNode.last == null;
+        for (int i = 0; i < MIN_CAPACITY; i++) {
+            assert deque.get(i) == null;
+        }
         assert deque.isEmpty();
     }
 
@@ -257,8 +342,9 @@ public class Deque<Item> implements Iterable<Item> {
         assert secondRemovedItem == 2;
         assert thirdRemovedItem == 3;
         assert deque.size() == 0;
-        assert deque.sentinelNode.first == null;
-        assert deque.sentinelNode.last == null;
+        for (int i = 0; i < MIN_CAPACITY; i++) {
+            assert deque.get(i) == null;
+        }
         assert deque.isEmpty();
     }
 
@@ -282,12 +368,40 @@ public class Deque<Item> implements Iterable<Item> {
         assert thirdRemovedItem == 6;
         assert fourthRemovedItem == 5;
         assert fifthRemovedItem == 3;
-        assert deque.sentinelNode.first == deque.sentinelNode.last;
-        assert deque.sentinelNode.first.item == 4;
+        assert deque.get(0) == 4;
         assert deque.size() == 1;
         assert !deque.isEmpty();
     }
 
+    private static void testGrowAndShrink() {
+        Deque<Integer> deque = new Deque<>();
+        for (int i = 1; i <= 20; i++) {
+            if (i % 2 == 0) {
+                deque.addFirst(i);
+            } else {
+                deque.addLast(i);
+            }
+        }
+        assert deque.size() == 20;
+        assert deque.capacity() == 32;
+        assert deque.get(0) == 20;
+        assert deque.get(19) == 19;
+
+        for (int i = 0; i < 12; i++) {
+            deque.removeFirst();
+        }
+        assert deque.size() == 8;
+        assert deque.capacity() == 16;
+        assert deque.get(0) == 5;
+        assert deque.get(7) == 19;
+
+        for (int i = 0; i < 8; i++) {
+            deque.removeLast();
+        }
+        assert deque.isEmpty();
+        assert deque.capacity() == MIN_CAPACITY;
+    }
+
     private static void testIterator() {
         Deque<Integer> deque = new Deque<>();
         deque.addFirst(6);
@@ -314,4 +428,42 @@ public class Deque<Item> implements Iterable<Item> {
             }
         }
     }
-}
\ No newline at end of file
+
+    private static void testStream() {
+        Deque<Integer> deque = new Deque<>();
+        // wrap the items around the end of the buffer
+        for (int i = 500; i >= 1; i--) {
+            deque.addFirst(i);
+        }
+        for (int i = 501; i <= 1000; i++) {
+            deque.addLast(i);
+        }
+
+        Spliterator<Integer> spliterator = deque.spliterator();
+        assert spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED);
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        assert prefix.estimateSize() == 500;
+        assert spliterator.estimateSize() == 500;
+
+        assert deque.stream().mapToLong(Integer::longValue).sum() == 500500;
+        assert deque.parallelStream().mapToLong(Integer::longValue).sum() == 500500;
+        Object[] ordered = deque.parallelStream().toArray();
+        for (int i = 0; i < ordered.length; i++) {
+            assert (Integer) ordered[i] == i + 1;
+        }
+
+        // the stream binds when the terminal operation starts, so changes before that are seen
+        Stream<Integer> stream = deque.stream();
+        deque.addLast(1001);
+        assert stream.count() == 1001;
+
+        // changes after that fail fast
+        boolean failedFast = false;
+        try {
+            deque.stream().forEach(item -> deque.removeFirst());
+        } catch (ConcurrentModificationException e) {
+            failedFast = true;
+        }
+        assert failedFast;
+    }
+}
@@ -0,0 +1,127 @@
+package co.markusi.coursera.algorithms.week2;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+/**
+ * Uniformly random permutation of [0, n), produced one index at a time by Fisher–Yates.
+ * Instead of an array of n indices, only the positions displaced by earlier swaps are kept, in an open-addressing
+ * map from position to index, so creating the permutation is O(1) and the first k indices cost O(k) time and memory.
+ * A position is dropped from the map once it has been returned, so the map never holds more than about
+ * min(k, n - k) entries, even over a full pass.
+ */
+class LazyPermutation {
+
+    private static final long EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long n;
+    private final SplittableRandom random;
+    private long position;
+    private long[] keys;
+    private long[] values;
+    private int entries;
+
+    LazyPermutation(long n, SplittableRandom random) {
+        this.n = n;
+        this.random = random;
+        position = 0;
+        keys = new long[INITIAL_CAPACITY];
+        values = new long[INITIAL_CAPACITY];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    boolean hasNext() {
+        return position < n;
+    }
+
+    long next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more indices to return.");
+        }
+        long swap = position + random.nextLong(n - position);
+        long current = get(position);
+        long index = current;
+        if (swap != position) {
+            index = get(swap);
+            put(swap, current);
+        }
+        remove(position);
+        position++;
+        return index;
+    }
+
+    // the index currently at position p: either displaced, or still p itself
+    private long get(long p) {
+        int slot = slot(p, keys.length);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == p) {
+                return values[slot];
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return p;
+    }
+
+    private void put(long p, long index) {
+        int slot = slot(p, keys.length);
+        while (keys[slot] != EMPTY && keys[slot] != p) {
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        if (keys[slot] == EMPTY) {
+            keys[slot] = p;
+            entries++;
+        }
+        values[slot] = index;
+        if (entries * 2 > keys.length) {
+            rehash();
+        }
+    }
+
+    // remove p, shifting later entries of its probe run back so that lookups never stop at the hole
+    private void remove(long p) {
+        int mask = keys.length - 1;
+        int hole = slot(p, keys.length);
+        while (keys[hole] != p) {
+            if (keys[hole] == EMPTY) {
+                return;
+            }
+            hole = (hole + 1) & mask;
+        }
+        entries--;
+        for (int i = (hole + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            int home = slot(keys[i], keys.length);
+            // the entry may fill the hole only if the hole lies between its home slot and where it is now
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = EMPTY;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i], keys.length);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slot(long key, int capacity) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h >>> 32) & (capacity - 1);
+    }
+}
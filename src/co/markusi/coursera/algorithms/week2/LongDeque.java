@@ -0,0 +1,227 @@
+package co.markusi.coursera.algorithms.week2;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+
+/**
+ * Deque of long values, stored unboxed in a circular array; the long counterpart of Deque.
+ */
+public class LongDeque {
+
+    // the capacity is always a power of two, so indices wrap around with a mask
+    private static final int MIN_CAPACITY = 8;
+
+    // circular buffer; the values are values[head], values[head + 1], ... values[head + size - 1], modulo capacity
+    private long[] values;
+    private int head;
+    private int size;
+
+    // construct an empty deque
+    public LongDeque() {
+        values = new long[MIN_CAPACITY];
+        head = 0;
+        size = 0;
+    }
+
+    // is the deque empty?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // return the number of values on the deque
+    public int size() {
+        return size;
+    }
+
+    // add the value to the front
+    public void addFirst(long value) {
+        if (size == values.length) {
+            resize(values.length * 2);
+        }
+        head = (head - 1) & (values.length - 1);
+        values[head] = value;
+        size++;
+    }
+
+    // add the value to the end
+    public void addLast(long value) {
+        if (size == values.length) {
+            resize(values.length * 2);
+        }
+        values[(head + size) & (values.length - 1)] = value;
+        size++;
+    }
+
+    // add all values to the end, in order
+    public void addAll(long[] source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Null arrays not supported in this implementation of deque.");
+        }
+        int capacity = values.length;
+        while (capacity - size < source.length) {
+            capacity *= 2;
+        }
+        if (capacity != values.length) {
+            resize(capacity);
+        }
+        int tail = (head + size) & (values.length - 1);
+        int firstPart = Math.min(source.length, values.length - tail);
+        System.arraycopy(source, 0, values, tail, firstPart);
+        System.arraycopy(source, firstPart, values, 0, source.length - firstPart);
+        size += source.length;
+    }
+
+    // remove and return the value from the front
+    public long removeFirst() {
+        checkIfEmpty();
+        long value = values[head];
+        head = (head + 1) & (values.length - 1);
+        size--;
+        shrinkIfSparse();
+        return value;
+    }
+
+    // remove and return the value from the end
+    public long removeLast() {
+        checkIfEmpty();
+        long value = values[(head + size - 1) & (values.length - 1)];
+        size--;
+        shrinkIfSparse();
+        return value;
+    }
+
+    // remove values from the front into destination, until it is full or the deque is empty;
+    // return the number of values moved
+    public int drainTo(long[] destination) {
+        if (destination == null) {
+            throw new IllegalArgumentException("Null arrays not supported in this implementation of deque.");
+        }
+        int count = Math.min(size, destination.length);
+        int firstPart = Math.min(count, values.length - head);
+        System.arraycopy(values, head, destination, 0, firstPart);
+        System.arraycopy(values, 0, destination, firstPart, count - firstPart);
+        head = (head + count) & (values.length - 1);
+        size -= count;
+        int capacity = values.length;
+        while (capacity > MIN_CAPACITY && size <= capacity / 4) {
+            capacity /= 2;
+        }
+        if (capacity != values.length) {
+            resize(capacity);
+        }
+        return count;
+    }
+
+    // apply action to every value, from front to end, without allocating
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(values[(head + i) & (values.length - 1)]);
+        }
+    }
+
+    // return an iterator over values in order from front to end
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int offset = 0;
+            @Override
+            public boolean hasNext() {
+                return offset < size;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("No more values to return.");
+                }
+                return values[(head + offset++) & (values.length - 1)];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove() not supported.");
+            }
+        };
+    }
+
+    private void checkIfEmpty() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("The deque is empty.");
+        }
+    }
+
+    private void shrinkIfSparse() {
+        if (values.length > MIN_CAPACITY && size == values.length / 4) {
+            resize(values.length / 2);
+        }
+    }
+
+    // copy the values to the start of a new array, unwrapping them
+    private void resize(int capacity) {
+        long[] newValues = new long[capacity];
+        int firstPart = Math.min(size, values.length - head);
+        System.arraycopy(values, head, newValues, 0, firstPart);
+        System.arraycopy(values, 0, newValues, firstPart, size - firstPart);
+        values = newValues;
+        head = 0;
+    }
+
+    // unit testing (optional)
+    public static void main(String[] args) {
+        testAddAndRemove();
+        testBulkTransfer();
+        testIteration();
+    }
+
+    private static void testAddAndRemove() {
+        LongDeque deque = new LongDeque();
+        for (int i = 1; i <= 20; i++) {
+            deque.addLast(i);
+            deque.addFirst(-i);
+        }
+        assert deque.size() == 40;
+        assert deque.values.length == 64;
+        for (int i = 20; i >= 1; i--) {
+            assert deque.removeFirst() == -i;
+            assert deque.removeLast() == i;
+        }
+        assert deque.isEmpty();
+        assert deque.values.length == MIN_CAPACITY;
+    }
+
+    private static void testBulkTransfer() {
+        LongDeque deque = new LongDeque();
+        deque.addFirst(0);
+        deque.addAll(new long[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+        assert deque.size() == 10;
+        assert deque.values.length == 16;
+
+        long[] destination = new long[4];
+        assert deque.drainTo(destination) == 4;
+        for (int i = 0; i < 4; i++) {
+            assert destination[i] == i;
+        }
+        destination = new long[10];
+        assert deque.drainTo(destination) == 6;
+        assert destination[0] == 4;
+        assert destination[5] == 9;
+        assert deque.isEmpty();
+        assert deque.values.length == MIN_CAPACITY;
+    }
+
+    private static void testIteration() {
+        LongDeque deque = new LongDeque();
+        for (int i = 5; i >= 1; i--) {
+            deque.addFirst(i);
+        }
+        PrimitiveIterator.OfLong iterator = deque.iterator();
+        for (int i = 1; i <= 5; i++) {
+            assert iterator.nextLong() == i;
+        }
+        assert !iterator.hasNext();
+
+        long[] sum = new long[1];
+        deque.forEach(value -> sum[0] += value);
+        assert sum[0] == 15;
+    }
+}
@@ -2,14 +2,33 @@ package co.markusi.coursera.algorithms.week2;
 
 import edu.princeton.cs.algs4.StdIn;
 import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
 
+import java.nio.file.Paths;
 import java.util.Iterator;
 
 public class Permutation {
 
+    // Permutation k        : enqueue every string from standard input and print k of them
+    // Permutation k -      : stream standard input, keeping only k strings
+    // Permutation k <file> : stream a memory-mapped file, keeping only k strings
     public static void main(String[] args) {
         int k = Integer.parseInt(args[0]);
 
+        if (args.length > 1) {
+            TokenReader reader = "-".equals(args[1]) ? new TokenReader(System.in) : new TokenReader(Paths.get(args[1]));
+            try {
+                String[] sample = reservoirSample(reader, k);
+                StdRandom.shuffle(sample);
+                for (String item : sample) {
+                    StdOut.println(item);
+                }
+            } finally {
+                reader.close();
+            }
+            return;
+        }
+
         RandomizedQueue<String> randomizedQueue = new RandomizedQueue<>();
         while (!StdIn.isEmpty()) {
             String input = StdIn.readString();
@@ -23,4 +42,42 @@ public class Permutation {
             i++;
         }
     }
+
+    // uniform sample of k tokens in O(k) memory, using reservoir sampling Algorithm L: the number of tokens to
+    // skip before the next replacement is drawn from a geometric distribution, so skipped tokens cost no random
+    // numbers and are never decoded
+    private static String[] reservoirSample(TokenReader reader, int k) {
+        String[] reservoir = new String[k];
+        int filled = 0;
+        while (filled < k) {
+            String token = reader.next();
+            if (token == null) {
+                String[] sample = new String[filled];
+                System.arraycopy(reservoir, 0, sample, 0, filled);
+                return sample;
+            }
+            reservoir[filled++] = token;
+        }
+        if (k == 0) {
+            return reservoir;
+        }
+        double w = Math.exp(Math.log(randomOpenUnit()) / k);
+        while (true) {
+            long skip = (long) Math.floor(Math.log(randomOpenUnit()) / Math.log1p(-w));
+            if (reader.skip(skip) < skip) {
+                return reservoir;
+            }
+            String token = reader.next();
+            if (token == null) {
+                return reservoir;
+            }
+            reservoir[StdRandom.uniform(k)] = token;
+            w *= Math.exp(Math.log(randomOpenUnit()) / k);
+        }
+    }
+
+    // uniform in (0, 1], so that its logarithm is finite
+    private static double randomOpenUnit() {
+        return 1.0 - StdRandom.uniform();
+    }
 }
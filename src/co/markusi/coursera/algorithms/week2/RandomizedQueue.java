@@ -1,20 +1,34 @@
 package co.markusi.coursera.algorithms.week2;
 
-import edu.princeton.cs.algs4.StdRandom;
-
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class RandomizedQueue<Item> implements Iterable<Item> {
 
+    private static final int MIN_CAPACITY = 2;
+
+    // the items are kept in items[0..size), so any index below size holds an item
     private Item[] items;
     private int size;
-    private int nextArrayIndex;
+    // changes whenever the items or their order in the array change, so that iterators can fail fast
+    private int modificationCount;
+    private final SplittableRandom random;
 
     // construct an empty randomized queue
     public RandomizedQueue() {
-        nextArrayIndex = 0;
+        this(new SplittableRandom());
+    }
+
+    // construct an empty randomized queue drawing from its own generator; a seeded one makes the order reproducible
+    public RandomizedQueue(SplittableRandom random) {
+        if (random == null) {
+            throw new IllegalArgumentException("random must not be null");
+        }
+        this.random = random;
         size = 0;
-        items = (Item[]) new Object[2];
+        items = (Item[]) new Object[MIN_CAPACITY];
     }
 
     // is the randomized queue empty?
@@ -30,12 +44,11 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
     // add the item
     public void enqueue(Item item) {
         validateInput(item);
-        if (nextArrayIndex == items.length) {
-            resizeArray();
+        if (size == items.length) {
+            resizeArray(items.length * 2);
         }
-        items[nextArrayIndex] = item;
-        nextArrayIndex++;
-        size++;
+        items[size++] = item;
+        modificationCount++;
     }
 
     // remove and return a random item
@@ -43,47 +56,84 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         checkIfEmpty();
         int index = getRandomIndex();
         Item item = items[index];
-        items[index] = null;
-
-        size--;
+        // move the last item into the hole, keeping the items dense
+        items[index] = items[--size];
+        items[size] = null;
+        modificationCount++;
 
-        if (size == items.length / 4) {
-            resizeArray();
+        if (items.length > MIN_CAPACITY && size == items.length / 4) {
+            resizeArray(items.length / 2);
         }
 
         return item;
     }
 
+    // remove k random items into destination[0..k)
+    public void dequeue(int k, Item[] destination) {
+        validateBatch(k, destination);
+        // partial Fisher–Yates from the end: each pick is swapped into the tail, which is then cut off
+        for (int i = 0; i < k; i++) {
+            int last = size - 1 - i;
+            int index = random.nextInt(last + 1);
+            Item item = items[index];
+            items[index] = items[last];
+            items[last] = null;
+            destination[i] = item;
+        }
+        size -= k;
+        modificationCount++;
+
+        int newCapacity = items.length;
+        while (newCapacity > MIN_CAPACITY && size <= newCapacity / 4) {
+            newCapacity /= 2;
+        }
+        if (newCapacity != items.length) {
+            resizeArray(newCapacity);
+        }
+    }
+
     // return a random item (but do not remove it)
     public Item sample() {
         checkIfEmpty();
-        int index = getRandomIndex();
-        return items[index];
+        return items[getRandomIndex()];
+    }
+
+    // copy k distinct random items (but do not remove them) into destination[0..k)
+    public void sample(int k, Item[] destination) {
+        sample(k, destination, new int[k]);
     }
 
-    // return an independent iterator over items in random order
+    // as above, using swaps[0..k) as scratch space, so that nothing is allocated
+    public void sample(int k, Item[] destination, int[] swaps) {
+        validateBatch(k, destination);
+        if (swaps == null || swaps.length < k) {
+            throw new IllegalArgumentException(String.format("swaps must hold at least %d indices", k));
+        }
+        // partial Fisher–Yates from the front, recording each swap
+        for (int i = 0; i < k; i++) {
+            int index = i + random.nextInt(size - i);
+            swaps[i] = index;
+            swap(i, index);
+            destination[i] = items[i];
+        }
+        // undo the swaps in reverse, so the stored order, and any iterator over it, is left as it was
+        for (int i = k - 1; i >= 0; i--) {
+            swap(i, swaps[i]);
+        }
+    }
+
+    // return an independent iterator over items in random order; it is created in O(1) and shuffles lazily,
+    // one Fisher–Yates step per item returned, so the first k items cost O(k); each iterator draws from a
+    // generator split off the queue's, so iterators stay independent and a seeded queue still reproduces them
     public Iterator<Item> iterator() {
         return new Iterator<Item>() {
 
-            private Item[] items = shuffleItems();
-            private int offset = 0;
-
-            private Item[] shuffleItems() {
-                Item[] itemsCopy = (Item[]) new Object[size];
-                int i = 0;
-                for (Item item : RandomizedQueue.this.items) {
-                    if (item != null) {
-                        itemsCopy[i] = item;
-                        i++;
-                    }
-                }
-                StdRandom.shuffle(itemsCopy);
-                return itemsCopy;
-            }
+            private final LazyPermutation permutation = new LazyPermutation(size, random.split());
+            private final int expectedModificationCount = modificationCount;
 
             @Override
             public boolean hasNext() {
-                return offset < items.length;
+                return permutation.hasNext();
             }
 
             @Override
@@ -91,7 +141,10 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
                 if (!hasNext()) {
                     throw new NoSuchElementException("No more items to return.");
                 }
-                return items[offset++];
+                if (modificationCount != expectedModificationCount) {
+                    throw new ConcurrentModificationException("The randomized queue changed during iteration.");
+                }
+                return items[(int) permutation.next()];
             }
 
             @Override
@@ -101,6 +154,99 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         };
     }
 
+    // return a spliterator over items in the order they are stored, which is arbitrary but not random; it splits
+    // the range of indices in half, so parallel streams divide the work evenly. Use it for aggregations where the
+    // order does not matter, and iterator() for a random order. It binds to the queue's items on first use, not on
+    // creation, and throws ConcurrentModificationException if the queue changes after that
+    @Override
+    public Spliterator<Item> spliterator() {
+        return new IndexSpliterator(0, -1, 0);
+    }
+
+    // return a sequential stream over items in storage order
+    public Stream<Item> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    // return a parallel stream over items in storage order
+    public Stream<Item> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    // items[origin..fence); a negative fence means not yet bound
+    private final class IndexSpliterator implements Spliterator<Item> {
+
+        private int origin;
+        private int fence;
+        private int expectedModificationCount;
+
+        private IndexSpliterator(int origin, int fence, int expectedModificationCount) {
+            this.origin = origin;
+            this.fence = fence;
+            this.expectedModificationCount = expectedModificationCount;
+        }
+
+        private int fence() {
+            if (fence < 0) {
+                fence = size;
+                expectedModificationCount = modificationCount;
+            }
+            return fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Item> action) {
+            int end = fence();
+            if (origin >= end) {
+                return false;
+            }
+            checkForModification();
+            action.accept(items[origin++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Item> action) {
+            int end = fence();
+            Item[] array = items;
+            for (int i = origin; i < end; i++) {
+                // checked before every item, since a dequeue nulls a slot inside the range
+                checkForModification();
+                action.accept(array[i]);
+            }
+            origin = end;
+            checkForModification();
+        }
+
+        @Override
+        public Spliterator<Item> trySplit() {
+            int end = fence();
+            int middle = (origin + end) >>> 1;
+            if (middle <= origin) {
+                return null;
+            }
+            Spliterator<Item> prefix = new IndexSpliterator(origin, middle, expectedModificationCount);
+            origin = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence() - origin;
+        }
+
+        @Override
+        public int characteristics() {
+            return SIZED | SUBSIZED | NONNULL;
+        }
+
+        private void checkForModification() {
+            if (modificationCount != expectedModificationCount) {
+                throw new ConcurrentModificationException("The randomized queue changed during traversal.");
+            }
+        }
+    }
+
     private void validateInput(Item item) {
         if (item == null) {
             throw new IllegalArgumentException("Null items not supported in this implementation of randomized queue.");
@@ -113,27 +259,35 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         }
     }
 
-    private void resizeArray() {
-        int newCapacity = size * 2;
-        Item[] newItems = (Item[]) new Object[newCapacity];
-
-        int i = 0;
-        for (Item item : items) {
-            if (item != null) {
-                newItems[i] = item;
-                i++;
-            }
+    private void validateBatch(int k, Item[] destination) {
+        if (k < 0 || k > size) {
+            throw new IllegalArgumentException(String.format("k must be between 0 and %d, received %d", size, k));
+        }
+        if (destination == null || destination.length < k) {
+            throw new IllegalArgumentException(String.format("destination must hold at least %d items", k));
         }
-        items = newItems;
-        nextArrayIndex = size;
+    }
+
+    private void swap(int i, int j) {
+        Item item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+    }
+
+    private void resizeArray(int newCapacity) {
+        items = Arrays.copyOf(items, newCapacity);
     }
 
     private int getRandomIndex() {
-        int index = StdRandom.uniform(items.length);
-        while (items[index] == null) {
-            index = StdRandom.uniform(items.length);
-        }
-        return index;
+        return random.nextInt(size);
+    }
+
+    private int capacity() {
+        return items.length;
+    }
+
+    private Item get(int index) {
+        return items[index];
     }
 
 
@@ -145,18 +299,20 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         testDequeues();
         testOneDeque();
         testDequeuesWhichShrinkArray();
+        testBatchSample();
+        testBatchDequeue();
         testIterator();
+        testSeeded();
+        testStream();
     }
 
     private static void testOneEnqueue() {
         RandomizedQueue<Integer> randomizedQueue = new RandomizedQueue<>();
         randomizedQueue.enqueue(1);
 
-        List<Integer> items = Arrays.asList(randomizedQueue.items);
-        assert items.get(0) == 1;
+        assert randomizedQueue.get(0) == 1;
         assert randomizedQueue.size() == 1;
-        assert randomizedQueue.nextArrayIndex == 1;
-        assert items.size() == 2;
+        assert randomizedQueue.capacity() == 2;
     }
 
     private static void testEnqueuesWhichExpandArray() {
@@ -165,25 +321,21 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         randomizedQueue.enqueue(2);
         randomizedQueue.enqueue(3);
 
-        List<Integer> items = Arrays.asList(randomizedQueue.items);
         assert randomizedQueue.size() == 3;
-        assert items.get(3) == null;
-        assert randomizedQueue.nextArrayIndex == 3;
-        assert items.size() == 4;
+        assert randomizedQueue.get(3) == null;
+        assert randomizedQueue.capacity() == 4;
 
         randomizedQueue.enqueue(4);
         randomizedQueue.enqueue(5);
 
-        items = Arrays.asList(randomizedQueue.items);
         assert randomizedQueue.size() == 5;
         for (int i = 1; i <= 5; i++) {
-            assert items.get(i - 1) == i;
+            assert randomizedQueue.get(i - 1) == i;
         }
         for (int j = 5; j < 8; j++) {
-            assert items.get(j) == null;
+            assert randomizedQueue.get(j) == null;
         }
-        assert randomizedQueue.nextArrayIndex == 5;
-        assert items.size() == 8;
+        assert randomizedQueue.capacity() == 8;
     }
 
     private static void testSample() {
@@ -220,9 +372,9 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         for (int i = 0; i < 5; i++) {
             dequeuedItems.add(randomizedQueue.dequeue());
         }
-        List<Integer> items = Arrays.asList(randomizedQueue.items);
         Set<Integer> set = new HashSet<>(dequeuedItems);
-        assert items.size() == 0;
+        assert randomizedQueue.isEmpty();
+        assert randomizedQueue.capacity() == 2;
         assert dequeuedItems.size() == 5;
         assert set.size() == 5;
     }
@@ -245,25 +397,66 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         randomizedQueue.enqueue(4);
         randomizedQueue.enqueue(5);
 
-        List<Integer> items = Arrays.asList(randomizedQueue.items);
         assert randomizedQueue.size() == 5;
-        assert randomizedQueue.nextArrayIndex == 5;
-        assert items.size() == 8;
+        assert randomizedQueue.capacity() == 8;
 
         randomizedQueue.dequeue();
         randomizedQueue.dequeue();
 
-        items = Arrays.asList(randomizedQueue.items);
         assert randomizedQueue.size() == 3;
-        assert randomizedQueue.nextArrayIndex == 5;
-        assert items.size() == 8;
+        assert randomizedQueue.capacity() == 8;
+        for (int i = 0; i < 3; i++) {
+            assert randomizedQueue.get(i) != null;
+        }
 
         randomizedQueue.dequeue();
 
-        items = Arrays.asList(randomizedQueue.items);
         assert randomizedQueue.size() == 2;
-        assert randomizedQueue.nextArrayIndex == 2;
-        assert items.size() == 4;
+        assert randomizedQueue.capacity() == 4;
+        assert randomizedQueue.get(0) != null;
+        assert randomizedQueue.get(1) != null;
+    }
+
+    private static void testBatchSample() {
+        RandomizedQueue<Integer> randomizedQueue = new RandomizedQueue<>();
+        for (int i = 1; i <= 10; i++) {
+            randomizedQueue.enqueue(i);
+        }
+
+        Integer[] samples = new Integer[6];
+        randomizedQueue.sample(6, samples);
+        Set<Integer> set = new HashSet<>(Arrays.asList(samples));
+        assert set.size() == 6;
+        assert randomizedQueue.size() == 10;
+        for (int i = 0; i < 10; i++) {
+            assert randomizedQueue.get(i) == i + 1;
+        }
+
+        Integer[] all = new Integer[10];
+        randomizedQueue.sample(10, all);
+        assert new HashSet<>(Arrays.asList(all)).size() == 10;
+    }
+
+    private static void testBatchDequeue() {
+        RandomizedQueue<Integer> randomizedQueue = new RandomizedQueue<>();
+        for (int i = 1; i <= 16; i++) {
+            randomizedQueue.enqueue(i);
+        }
+        assert randomizedQueue.capacity() == 16;
+
+        Integer[] dequeued = new Integer[14];
+        randomizedQueue.dequeue(14, dequeued);
+        Set<Integer> set = new HashSet<>(Arrays.asList(dequeued));
+        assert set.size() == 14;
+        assert randomizedQueue.size() == 2;
+        assert randomizedQueue.capacity() == 4;
+        assert !set.contains(randomizedQueue.get(0));
+        assert !set.contains(randomizedQueue.get(1));
+        assert randomizedQueue.get(2) == null;
+
+        randomizedQueue.dequeue(2, dequeued);
+        assert randomizedQueue.isEmpty();
+        assert randomizedQueue.capacity() == 2;
     }
 
     private static void testIterator() {
@@ -286,5 +479,86 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
             for (int item2 : randomizedQueue) {
             }
         }
+
+        Iterator<Integer> iterator = randomizedQueue.iterator();
+        iterator.next();
+        randomizedQueue.enqueue(6);
+        boolean failedFast = false;
+        try {
+            iterator.next();
+        } catch (ConcurrentModificationException e) {
+            failedFast = true;
+        }
+        assert failedFast;
+
+        // sample(k) leaves the stored items as they were, so iterators carry on, like with sample()
+        Set<Integer> seen = new HashSet<>();
+        Integer[] samples = new Integer[3];
+        int[] swaps = new int[3];
+        for (int item : randomizedQueue) {
+            randomizedQueue.sample(3, samples, swaps);
+            assert seen.add(item);
+        }
+        assert seen.size() == randomizedQueue.size();
+    }
+
+    private static void testSeeded() {
+        RandomizedQueue<Integer> first = new RandomizedQueue<>(new SplittableRandom(42));
+        RandomizedQueue<Integer> second = new RandomizedQueue<>(new SplittableRandom(42));
+        for (int i = 0; i < 100; i++) {
+            first.enqueue(i);
+            second.enqueue(i);
+        }
+        Iterator<Integer> firstIterator = first.iterator();
+        Iterator<Integer> secondIterator = second.iterator();
+        while (firstIterator.hasNext()) {
+            assert firstIterator.next().equals(secondIterator.next());
+        }
+        assert first.sample().equals(second.sample());
+        while (!first.isEmpty()) {
+            assert first.dequeue().equals(second.dequeue());
+        }
+        assert second.isEmpty();
+    }
+
+    private static void testStream() {
+        RandomizedQueue<Integer> randomizedQueue = new RandomizedQueue<>();
+        for (int i = 1; i <= 1000; i++) {
+            randomizedQueue.enqueue(i);
+        }
+
+        Spliterator<Integer> spliterator = randomizedQueue.spliterator();
+        assert spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED);
+        assert !spliterator.hasCharacteristics(Spliterator.ORDERED);
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        assert prefix.estimateSize() == 500;
+        assert spliterator.estimateSize() == 500;
+
+        assert randomizedQueue.stream().count() == 1000;
+        assert randomizedQueue.stream().mapToLong(Integer::longValue).sum() == 500500;
+        assert randomizedQueue.parallelStream().mapToLong(Integer::longValue).sum() == 500500;
+        assert randomizedQueue.parallelStream().distinct().count() == 1000;
+
+        boolean failed = false;
+        try {
+            randomizedQueue.stream().forEach(item -> randomizedQueue.enqueue(item));
+        } catch (ConcurrentModificationException e) {
+            failed = true;
+        }
+        assert failed;
+
+        // the stream binds when the terminal operation starts, so changes before that are seen
+        Stream<Integer> stream = randomizedQueue.stream();
+        randomizedQueue.enqueue(0);
+        assert stream.count() == randomizedQueue.size();
+
+        // a dequeue during traversal fails fast instead of handing the emptied slot to the pipeline
+        failed = false;
+        try {
+            randomizedQueue.stream().mapToLong(Integer::longValue).forEach(item -> randomizedQueue.dequeue());
+        } catch (ConcurrentModificationException e) {
+            failed = true;
+        }
+        assert failed;
     }
-}
\ No newline at end of file
+}
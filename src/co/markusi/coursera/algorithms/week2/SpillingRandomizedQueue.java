@@ -0,0 +1,551 @@
+package co.markusi.coursera.algorithms.week2;
+
+import co.markusi.coursera.algorithms.week1.OffHeapLongArray;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+/**
+ * Randomized queue that keeps at most memoryCapacity items on the heap and spills the rest to disk.
+ * Spilled items are encoded by a Codec and appended as records to memory-mapped segment files; a record holds
+ * its length, its slot in the offset index, and the encoded item. The offset index is itself a growable array of
+ * longs in mapped files, kept dense with swap-with-last like the items, so the heap holds nothing per spilled item
+ * and the number of spilled items is limited by disk space, not by the size of a Java array.
+ * dequeue(), sample() and iteration pick uniformly over memory and disk together.
+ * Each segment counts its live bytes. A segment whose live bytes drop to zero is reused for writing, and one that
+ * drops below a quarter full is compacted: its live records are moved to the end of the log. Compaction moves
+ * less than a third of a byte per byte dequeued, and keeps the segments within about four times the live data.
+ * close() unmaps the segment and index files and deletes them.
+ */
+public class SpillingRandomizedQueue<Item> implements Iterable<Item>, Closeable {
+
+    // turns items into bytes and back; decode gets exactly the bytes encode returned
+    public interface Codec<Item> {
+
+        byte[] encode(Item item);
+
+        Item decode(byte[] bytes);
+    }
+
+    private static final int MIN_CAPACITY = 2;
+    // 1 GiB segments and index files; a record never crosses a segment boundary
+    private static final int SEGMENT_SHIFT = 30;
+    // length, then slot in the offset index
+    private static final int RECORD_HEADER = Integer.BYTES + Long.BYTES;
+
+    private final Codec<Item> codec;
+    private final int memoryCapacity;
+    private final Path directory;
+    private final SplittableRandom random;
+    private final int segmentShift;
+    private final int indexShift;
+
+    // items on the heap, dense in memory[0..memorySize)
+    private Item[] memory;
+    private int memorySize;
+    // offsets of spilled records, dense in slots [0, diskSize) of the index; an offset is
+    // segment << segmentShift | position
+    private long diskSize;
+    private final List<LongBuffer> indexSegments = new ArrayList<>();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    // every mapped file, segments and index alike, with its mapping
+    private final List<Path> files = new ArrayList<>();
+    private final List<MappedByteBuffer> mappings = new ArrayList<>();
+    // bytes of live records in each segment, and how far each segment has been written
+    private long[] liveBytes = new long[MIN_CAPACITY];
+    private int[] writtenBytes = new int[MIN_CAPACITY];
+    private final IntDeque freeSegments = new IntDeque();
+    // where the next spilled record goes; -1 until the first spill
+    private int writeSegment = -1;
+    private int writePosition;
+    private boolean compacting;
+    private int modificationCount;
+
+    // construct an empty queue holding at most memoryCapacity items on the heap, spilling into directory
+    public SpillingRandomizedQueue(Codec<Item> codec, int memoryCapacity, Path directory) {
+        this(codec, memoryCapacity, directory, new SplittableRandom());
+    }
+
+    // as above, drawing from its own generator
+    public SpillingRandomizedQueue(Codec<Item> codec, int memoryCapacity, Path directory, SplittableRandom random) {
+        this(codec, memoryCapacity, directory, random, SEGMENT_SHIFT);
+    }
+
+    @SuppressWarnings("unchecked")
+    SpillingRandomizedQueue(Codec<Item> codec, int memoryCapacity, Path directory, SplittableRandom random,
+                            int segmentShift) {
+        if (codec == null || directory == null || random == null) {
+            throw new IllegalArgumentException("codec, directory and random must not be null");
+        }
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException(String.format("memoryCapacity must be >= 0, received %d",
+                    memoryCapacity));
+        }
+        this.codec = codec;
+        this.memoryCapacity = memoryCapacity;
+        this.directory = directory;
+        this.random = random;
+        this.segmentShift = segmentShift;
+        this.indexShift = segmentShift - 3;
+        memory = (Item[]) new Object[Math.min(MIN_CAPACITY, memoryCapacity)];
+    }
+
+    // codec for strings as UTF-8
+    public static Codec<String> utf8() {
+        return new Codec<String>() {
+            @Override
+            public byte[] encode(String item) {
+                return item.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    // is the queue empty?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // return the number of items on the queue, on the heap and on disk
+    public long size() {
+        return memorySize + diskSize;
+    }
+
+    // return the number of items spilled to disk
+    public long spilledSize() {
+        return diskSize;
+    }
+
+    // add the item
+    public void enqueue(Item item) {
+        if (item == null) {
+            throw new IllegalArgumentException("Null items not supported in this implementation of randomized queue.");
+        }
+        if (memorySize < memoryCapacity) {
+            if (memorySize == memory.length) {
+                memory = Arrays.copyOf(memory, (int) Math.min(2L * memory.length, memoryCapacity));
+            }
+            memory[memorySize++] = item;
+        } else {
+            // the slot only counts once its offset is set, so a compaction inside write() cannot take a stale
+            // index entry for a live record
+            long slot = diskSize;
+            setOffset(slot, write(codec.encode(item), slot));
+            diskSize++;
+        }
+        modificationCount++;
+    }
+
+    // remove and return a random item
+    public Item dequeue() {
+        checkIfEmpty();
+        long index = random.nextLong(size());
+        Item item;
+        if (index < memorySize) {
+            int i = (int) index;
+            item = memory[i];
+            memory[i] = memory[--memorySize];
+            memory[memorySize] = null;
+        } else {
+            long slot = index - memorySize;
+            long offset = offset(slot);
+            item = read(offset);
+            long last = --diskSize;
+            if (slot != last) {
+                // move the last record's offset into the hole, and point the record at its new slot
+                long lastOffset = offset(last);
+                setOffset(slot, lastOffset);
+                segment(lastOffset).putLong(position(lastOffset) + Integer.BYTES, slot);
+            }
+            release(offset);
+        }
+        modificationCount++;
+        return item;
+    }
+
+    // return a random item (but do not remove it)
+    public Item sample() {
+        checkIfEmpty();
+        return get(random.nextLong(size()));
+    }
+
+    // return an independent iterator over items in random order, shuffled lazily as in RandomizedQueue
+    public Iterator<Item> iterator() {
+        return new Iterator<Item>() {
+
+            private final LazyPermutation permutation = new LazyPermutation(size(), random.split());
+            private final int expectedModificationCount = modificationCount;
+
+            @Override
+            public boolean hasNext() {
+                return permutation.hasNext();
+            }
+
+            @Override
+            public Item next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("No more items to return.");
+                }
+                if (modificationCount != expectedModificationCount) {
+                    throw new ConcurrentModificationException("The randomized queue changed during iteration.");
+                }
+                return get(permutation.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove() not supported.");
+            }
+        };
+    }
+
+    // unmap and delete the segment and index files, so their disk space is freed at once;
+    // the queue must not be used afterwards
+    @Override
+    public void close() {
+        segments.clear();
+        indexSegments.clear();
+        for (MappedByteBuffer mapping : mappings) {
+            OffHeapLongArray.release(mapping);
+        }
+        mappings.clear();
+        try {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to delete segments in %s", directory), e);
+        } finally {
+            files.clear();
+        }
+    }
+
+    private void checkIfEmpty() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("The randomized queue is empty.");
+        }
+    }
+
+    private Item get(long index) {
+        if (index < memorySize) {
+            return memory[(int) index];
+        }
+        return read(offset(index - memorySize));
+    }
+
+    // append a record for the index slot and return its offset
+    private long write(byte[] bytes, long slot) {
+        int segmentSize = 1 << segmentShift;
+        long recordSize = RECORD_HEADER + (long) bytes.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException(String.format("encoded item of %d bytes does not fit in a segment",
+                    bytes.length));
+        }
+        if (writeSegment < 0 || writePosition + recordSize > segmentSize) {
+            int previous = writeSegment;
+            writeSegment = freeSegments.isEmpty() ? newSegment() : freeSegments.removeLast();
+            writePosition = 0;
+            if (previous >= 0) {
+                reclaim(previous);
+            }
+        }
+        ByteBuffer segment = segments.get(writeSegment).duplicate();
+        segment.position(writePosition);
+        segment.putInt(bytes.length);
+        segment.putLong(slot);
+        segment.put(bytes);
+        long offset = (long) writeSegment << segmentShift | writePosition;
+        writePosition += (int) recordSize;
+        writtenBytes[writeSegment] = writePosition;
+        liveBytes[writeSegment] += recordSize;
+        return offset;
+    }
+
+    private Item read(long offset) {
+        ByteBuffer segment = segment(offset).duplicate();
+        segment.position(position(offset));
+        byte[] bytes = new byte[segment.getInt()];
+        segment.getLong();
+        segment.get(bytes);
+        return codec.decode(bytes);
+    }
+
+    // account for a dequeued record and reclaim its segment if it got sparse enough
+    private void release(long offset) {
+        int segment = (int) (offset >>> segmentShift);
+        liveBytes[segment] -= RECORD_HEADER + segment(offset).getInt(position(offset));
+        if (diskSize == 0) {
+            // nothing is left spilled: start writing over at the start of the current segment
+            writePosition = 0;
+            writtenBytes[writeSegment] = 0;
+        }
+        reclaim(segment);
+    }
+
+    // free a segment without live records, and compact one less than a quarter full;
+    // the segment being written is left alone until writing moves on
+    private void reclaim(int segment) {
+        if (segment == writeSegment || compacting || writtenBytes[segment] == 0 && liveBytes[segment] == 0) {
+            return;
+        }
+        if (liveBytes[segment] >= 1L << (segmentShift - 2)) {
+            return;
+        }
+        compacting = true;
+        try {
+            ByteBuffer buffer = segments.get(segment);
+            int position = 0;
+            while (position < writtenBytes[segment]) {
+                int length = buffer.getInt(position);
+                long slot = buffer.getLong(position + Integer.BYTES);
+                long offset = (long) segment << segmentShift | position;
+                // a record is live while its slot still points at it; dead records may name any slot
+                if (slot < diskSize && offset(slot) == offset) {
+                    byte[] bytes = new byte[length];
+                    ByteBuffer record = buffer.duplicate();
+                    record.position(position + RECORD_HEADER);
+                    record.get(bytes);
+                    setOffset(slot, write(bytes, slot));
+                }
+                position += RECORD_HEADER + length;
+            }
+        } finally {
+            compacting = false;
+        }
+        liveBytes[segment] = 0;
+        writtenBytes[segment] = 0;
+        freeSegments.addLast(segment);
+    }
+
+    private int newSegment() {
+        int segment = segments.size();
+        segments.add(map(1L << segmentShift));
+        if (segment == liveBytes.length) {
+            liveBytes = Arrays.copyOf(liveBytes, 2 * segment);
+            writtenBytes = Arrays.copyOf(writtenBytes, 2 * segment);
+        }
+        return segment;
+    }
+
+    private ByteBuffer segment(long offset) {
+        return segments.get((int) (offset >>> segmentShift));
+    }
+
+    private int position(long offset) {
+        return (int) (offset & ((1L << segmentShift) - 1));
+    }
+
+    private long offset(long slot) {
+        return indexSegments.get((int) (slot >>> indexShift)).get((int) (slot & ((1L << indexShift) - 1)));
+    }
+
+    private void setOffset(long slot, long offset) {
+        int indexSegment = (int) (slot >>> indexShift);
+        while (indexSegments.size() <= indexSegment) {
+            indexSegments.add(map(1L << segmentShift).asLongBuffer());
+        }
+        indexSegments.get(indexSegment).put((int) (slot & ((1L << indexShift) - 1)), offset);
+    }
+
+    // map a new file of the given size in the directory
+    private MappedByteBuffer map(long size) {
+        Path file = null;
+        try {
+            file = Files.createTempFile(directory, "spill", ".segment");
+            files.add(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                mappings.add(mapping);
+                return mapping;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to map %s", file), e);
+        }
+    }
+
+    // unit testing (optional)
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("spill");
+        try {
+            testSpillAndDequeueAll(directory);
+            testUniformOverMemoryAndDisk(directory);
+            testIterator(directory);
+            testSpaceReused(directory);
+            testSpaceReclaimedUnderChurn(directory);
+            testLiveBytesMatchIndex(directory);
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    private static void testSpillAndDequeueAll(Path directory) {
+        // 64 KiB segments, so that records spread over several of them
+        try (SpillingRandomizedQueue<String> queue = new SpillingRandomizedQueue<>(utf8(), 100, directory,
+                new SplittableRandom(1), 16)) {
+            for (int i = 0; i < 10_000; i++) {
+                queue.enqueue("item-" + i);
+            }
+            assert queue.size() == 10_000;
+            assert queue.spilledSize() == 9_900;
+            assert queue.segments.size() > 1;
+            boolean[] seen = new boolean[10_000];
+            while (!queue.isEmpty()) {
+                int item = Integer.parseInt(queue.dequeue().substring(5));
+                assert !seen[item];
+                seen[item] = true;
+            }
+            boolean failed = false;
+            try {
+                queue.dequeue();
+            } catch (NoSuchElementException e) {
+                failed = true;
+            }
+            assert failed;
+        }
+    }
+
+    // with 2 of 10 items on the heap, each item should still come out first about 10% of the time
+    private static void testUniformOverMemoryAndDisk(Path directory) {
+        int rounds = 20_000;
+        int[] first = new int[10];
+        SplittableRandom random = new SplittableRandom(2);
+        try (SpillingRandomizedQueue<String> queue = new SpillingRandomizedQueue<>(utf8(), 2, directory,
+                random.split(), 16)) {
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < 10; i++) {
+                    queue.enqueue(Integer.toString(i));
+                }
+                first[Integer.parseInt(queue.dequeue())]++;
+                while (!queue.isEmpty()) {
+                    queue.dequeue();
+                }
+            }
+        }
+        for (int count : first) {
+            assert Math.abs(count - rounds / 10) < 0.02 * rounds;
+        }
+    }
+
+    private static void testIterator(Path directory) {
+        try (SpillingRandomizedQueue<String> queue = new SpillingRandomizedQueue<>(utf8(), 10, directory,
+                new SplittableRandom(3), 16)) {
+            for (int i = 0; i < 1000; i++) {
+                queue.enqueue(Integer.toString(i));
+            }
+            boolean[] seen = new boolean[1000];
+            int count = 0;
+            for (String item : queue) {
+                int i = Integer.parseInt(item);
+                assert !seen[i];
+                seen[i] = true;
+                count++;
+            }
+            assert count == 1000;
+
+            Iterator<String> iterator = queue.iterator();
+            iterator.next();
+            queue.enqueue("1000");
+            boolean failed = false;
+            try {
+                iterator.next();
+            } catch (ConcurrentModificationException e) {
+                failed = true;
+            }
+            assert failed;
+        }
+    }
+
+    // once every spilled item is dequeued, writing starts over and no new segment is needed
+    private static void testSpaceReused(Path directory) {
+        try (SpillingRandomizedQueue<String> queue = new SpillingRandomizedQueue<>(utf8(), 0, directory,
+                new SplittableRandom(4), 12)) {
+            for (int round = 0; round < 100; round++) {
+                for (int i = 0; i < 150; i++) {
+                    queue.enqueue("item-" + i);
+                }
+                while (!queue.isEmpty()) {
+                    queue.dequeue();
+                }
+            }
+            assert queue.segments.size() == 1;
+        }
+    }
+
+    // under steady churn the segments stay within about four times the live data, and no item is lost
+    private static void testSpaceReclaimedUnderChurn(Path directory) {
+        int live = 1000;
+        int rounds = 200_000;
+        // 4 KiB segments; each record takes at most 12 + 11 bytes, so the live records fill about 6 segments
+        try (SpillingRandomizedQueue<String> queue = new SpillingRandomizedQueue<>(utf8(), 0, directory,
+                new SplittableRandom(5), 12)) {
+            boolean[] present = new boolean[live + rounds];
+            for (int i = 0; i < live; i++) {
+                queue.enqueue("item-" + i);
+                present[i] = true;
+            }
+            for (int round = 0; round < rounds; round++) {
+                int item = Integer.parseInt(queue.dequeue().substring(5));
+                assert present[item];
+                present[item] = false;
+                queue.enqueue("item-" + (live + round));
+                present[live + round] = true;
+            }
+            assert queue.segments.size() <= 4 * live * 23 / 4096 + 2;
+            while (!queue.isEmpty()) {
+                int item = Integer.parseInt(queue.dequeue().substring(5));
+                assert present[item];
+                present[item] = false;
+            }
+            for (boolean item : present) {
+                assert !item;
+            }
+        }
+    }
+
+    // with few items spilled, writing often moves on from a sparse segment and compacts it; the live bytes counted
+    // per segment must always match the records the index points at
+    private static void testLiveBytesMatchIndex(Path directory) {
+        SplittableRandom random = new SplittableRandom(9);
+        try (SpillingRandomizedQueue<String> queue = new SpillingRandomizedQueue<>(utf8(), 0, directory,
+                new SplittableRandom(2), 12)) {
+            for (int operation = 0; operation < 20_000; operation++) {
+                if (queue.isEmpty() || queue.size() < 60 && random.nextInt(100) < 55) {
+                    queue.enqueue("v" + random.nextInt(1 << random.nextInt(30)));
+                } else {
+                    queue.dequeue();
+                }
+                long indexedBytes = 0;
+                for (long slot = 0; slot < queue.diskSize; slot++) {
+                    long offset = queue.offset(slot);
+                    indexedBytes += RECORD_HEADER + queue.segment(offset).getInt(queue.position(offset));
+                }
+                long countedBytes = 0;
+                for (long bytes : queue.liveBytes) {
+                    countedBytes += bytes;
+                }
+                assert countedBytes == indexedBytes;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package co.markusi.coursera.algorithms.week2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Whitespace-separated tokens read straight from bytes, without a Scanner and without regular expressions.
+ * The input is either a stream, read through a buffer, or a file, memory-mapped in chunks of at most 1 GiB.
+ * Tokens can be skipped without being decoded into strings.
+ */
+class TokenReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long CHUNK_SIZE = 1L << 30;
+
+    private final InputStream input;
+    private final FileChannel channel;
+    private MappedByteBuffer chunk;
+    private long nextChunkPosition;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferLength;
+    private int bufferOffset;
+    private byte[] token = new byte[64];
+
+    TokenReader(InputStream input) {
+        this.input = input;
+        this.channel = null;
+    }
+
+    TokenReader(Path file) {
+        this.input = null;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to open %s", file), e);
+        }
+    }
+
+    // the next token, or null at the end of the input
+    String next() {
+        int length = 0;
+        int next = skipWhitespace();
+        if (next < 0) {
+            return null;
+        }
+        while (next >= 0 && !isWhitespace(next)) {
+            if (length == token.length) {
+                token = Arrays.copyOf(token, length * 2);
+            }
+            token[length++] = (byte) next;
+            next = read();
+        }
+        return new String(token, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // skip the next token; false at the end of the input
+    boolean skip() {
+        int next = skipWhitespace();
+        if (next < 0) {
+            return false;
+        }
+        while (next >= 0 && !isWhitespace(next)) {
+            next = read();
+        }
+        return true;
+    }
+
+    // skip up to count tokens and return how many were skipped
+    long skip(long count) {
+        long skipped = 0;
+        while (skipped < count && skip()) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int skipWhitespace() {
+        int next = read();
+        while (next >= 0 && isWhitespace(next)) {
+            next = read();
+        }
+        return next;
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0b;
+    }
+
+    private int read() {
+        if (bufferOffset == bufferLength && !fill()) {
+            return -1;
+        }
+        return buffer[bufferOffset++] & 0xff;
+    }
+
+    private boolean fill() {
+        bufferOffset = 0;
+        bufferLength = 0;
+        try {
+            if (input != null) {
+                int read = input.read(buffer, 0, buffer.length);
+                bufferLength = Math.max(read, 0);
+                return bufferLength > 0;
+            }
+            if (chunk == null || !chunk.hasRemaining()) {
+                long remaining = channel.size() - nextChunkPosition;
+                if (remaining <= 0) {
+                    return false;
+                }
+                long length = Math.min(CHUNK_SIZE, remaining);
+                chunk = channel.map(FileChannel.MapMode.READ_ONLY, nextChunkPosition, length);
+                nextChunkPosition += length;
+            }
+            bufferLength = Math.min(buffer.length, chunk.remaining());
+            chunk.get(buffer, 0, bufferLength);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
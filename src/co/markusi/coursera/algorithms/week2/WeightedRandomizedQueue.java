@@ -0,0 +1,313 @@
+package co.markusi.coursera.algorithms.week2;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+/**
+ * Randomized queue whose dequeue() and sample() pick an item with probability proportional to its weight.
+ * Items and weights are kept dense in parallel arrays, as in RandomizedQueue, and a Fenwick tree over the weights
+ * finds the item under a uniform point of the total weight in O(log n). For a set that no longer changes,
+ * prepareStaticSampling() builds a Vose alias table that makes sample() O(1) until the next enqueue or dequeue.
+ */
+public class WeightedRandomizedQueue<Item> {
+
+    private static final int MIN_CAPACITY = 2;
+
+    // items[0..size) with their weights; tree[1..capacity] is the Fenwick tree over weights[0..capacity)
+    private Item[] items;
+    private double[] weights;
+    private double[] tree;
+    private int size;
+    private final SplittableRandom random;
+    // alias table over items[0..size), or null when it has not been built since the last change
+    private double[] aliasProbability;
+    private int[] alias;
+
+    // construct an empty weighted randomized queue
+    public WeightedRandomizedQueue() {
+        this(new SplittableRandom());
+    }
+
+    // construct an empty weighted randomized queue drawing from its own generator
+    @SuppressWarnings("unchecked")
+    public WeightedRandomizedQueue(SplittableRandom random) {
+        if (random == null) {
+            throw new IllegalArgumentException("random must not be null");
+        }
+        this.random = random;
+        size = 0;
+        items = (Item[]) new Object[MIN_CAPACITY];
+        weights = new double[MIN_CAPACITY];
+        tree = new double[MIN_CAPACITY + 1];
+    }
+
+    // is the queue empty?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // return the number of items on the queue
+    public int size() {
+        return size;
+    }
+
+    // return the sum of the weights of all items on the queue
+    public double totalWeight() {
+        return prefixSum(size);
+    }
+
+    // add the item with the given positive, finite weight
+    public void enqueue(Item item, double weight) {
+        if (item == null) {
+            throw new IllegalArgumentException("Null items not supported in this implementation of randomized queue.");
+        }
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException(String.format("weight must be positive and finite, received %f",
+                    weight));
+        }
+        if (size == items.length) {
+            resize(items.length * 2);
+        }
+        items[size] = item;
+        weights[size] = weight;
+        add(size, weight);
+        size++;
+        invalidateAlias();
+    }
+
+    // remove and return an item picked with probability proportional to its weight
+    public Item dequeue() {
+        checkIfEmpty();
+        int index = weightedIndex();
+        Item item = items[index];
+        int last = --size;
+        // move the last item into the hole, keeping the items dense, and move its weight in the tree with it
+        add(index, weights[last] - weights[index]);
+        add(last, -weights[last]);
+        items[index] = items[last];
+        weights[index] = weights[last];
+        items[last] = null;
+        weights[last] = 0;
+        invalidateAlias();
+
+        if (items.length > MIN_CAPACITY && size == items.length / 4) {
+            resize(items.length / 2);
+        }
+
+        return item;
+    }
+
+    // return an item picked with probability proportional to its weight (but do not remove it)
+    public Item sample() {
+        checkIfEmpty();
+        if (alias != null) {
+            int index = random.nextInt(size);
+            return random.nextDouble() < aliasProbability[index] ? items[index] : items[alias[index]];
+        }
+        return items[weightedIndex()];
+    }
+
+    // build an alias table so that sample() takes O(1) until the queue is next changed
+    public void prepareStaticSampling() {
+        double[] probability = new double[size];
+        int[] aliases = new int[size];
+        // scaled so that the average weight is 1; below 1 the slot is topped up by an alias above 1
+        double scale = size / totalWeight();
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            probability[i] = weights[i] * scale;
+            if (probability[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            aliases[less] = more;
+            probability[more] -= 1 - probability[less];
+            if (probability[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // whatever is left differs from 1 only by rounding
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1;
+        }
+        aliasProbability = probability;
+        alias = aliases;
+    }
+
+    private void checkIfEmpty() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("The randomized queue is empty.");
+        }
+    }
+
+    private void invalidateAlias() {
+        aliasProbability = null;
+        alias = null;
+    }
+
+    // index of the item under a uniform point of the total weight
+    private int weightedIndex() {
+        double target = random.nextDouble() * totalWeight();
+        // descend the tree: take every step whose whole range still lies below the target
+        int position = 0;
+        for (int step = Integer.highestOneBit(items.length); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= items.length && tree[next] <= target) {
+                position = next;
+                target -= tree[next];
+            }
+        }
+        // rounding in the tree can carry the target past the last item
+        return Math.min(position, size - 1);
+    }
+
+    private double prefixSum(int count) {
+        double sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private void add(int index, double delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // resizing rebuilds the tree from the weights in O(n), which also discards rounding left by earlier updates
+    private void resize(int newCapacity) {
+        items = Arrays.copyOf(items, newCapacity);
+        weights = Arrays.copyOf(weights, newCapacity);
+        tree = new double[newCapacity + 1];
+        System.arraycopy(weights, 0, tree, 1, size);
+        for (int i = 1; i <= newCapacity; i++) {
+            int parent = i + (i & -i);
+            if (parent <= newCapacity) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private int capacity() {
+        return items.length;
+    }
+
+    // unit testing (optional)
+    public static void main(String[] args) {
+        testEnqueueAndDequeueAll();
+        testInvalidWeights();
+        testProportionalSample();
+        testProportionalDequeue();
+        testAliasInvalidation();
+    }
+
+    private static void testEnqueueAndDequeueAll() {
+        WeightedRandomizedQueue<Integer> queue = new WeightedRandomizedQueue<>(new SplittableRandom(1));
+        for (int i = 0; i < 1000; i++) {
+            queue.enqueue(i, i + 1);
+        }
+        assert queue.size() == 1000;
+        assert queue.capacity() == 1024;
+        assert Math.abs(queue.totalWeight() - 1000 * 1001 / 2.0) < 1e-6;
+        boolean[] seen = new boolean[1000];
+        while (!queue.isEmpty()) {
+            int item = queue.dequeue();
+            assert !seen[item];
+            seen[item] = true;
+        }
+        assert queue.capacity() == MIN_CAPACITY;
+        assert queue.totalWeight() == 0;
+        boolean failed = false;
+        try {
+            queue.dequeue();
+        } catch (NoSuchElementException e) {
+            failed = true;
+        }
+        assert failed;
+    }
+
+    private static void testInvalidWeights() {
+        WeightedRandomizedQueue<Integer> queue = new WeightedRandomizedQueue<>();
+        double[] invalid = {0, -1, Double.NaN, Double.POSITIVE_INFINITY};
+        for (double weight : invalid) {
+            boolean failed = false;
+            try {
+                queue.enqueue(1, weight);
+            } catch (IllegalArgumentException e) {
+                failed = true;
+            }
+            assert failed;
+        }
+        assert queue.isEmpty();
+    }
+
+    // weights 1..4 should be sampled about 10%, 20%, 30% and 40% of the time, with and without the alias table
+    private static void testProportionalSample() {
+        WeightedRandomizedQueue<Integer> queue = new WeightedRandomizedQueue<>(new SplittableRandom(2));
+        for (int i = 0; i < 4; i++) {
+            queue.enqueue(i, i + 1);
+        }
+        assertProportional(queue);
+        queue.prepareStaticSampling();
+        assert queue.alias != null;
+        assertProportional(queue);
+    }
+
+    private static void assertProportional(WeightedRandomizedQueue<Integer> queue) {
+        int samples = 100_000;
+        int[] counts = new int[4];
+        for (int i = 0; i < samples; i++) {
+            counts[queue.sample()]++;
+        }
+        for (int i = 0; i < 4; i++) {
+            double expected = samples * (i + 1) / 10.0;
+            assert Math.abs(counts[i] - expected) < 0.03 * samples;
+        }
+    }
+
+    // the first item dequeued from weights 1 and 3 should be the heavier one about 75% of the time
+    private static void testProportionalDequeue() {
+        SplittableRandom random = new SplittableRandom(3);
+        int rounds = 20_000;
+        int heavy = 0;
+        for (int i = 0; i < rounds; i++) {
+            WeightedRandomizedQueue<Integer> queue = new WeightedRandomizedQueue<>(random.split());
+            queue.enqueue(0, 1);
+            queue.enqueue(1, 3);
+            heavy += queue.dequeue();
+        }
+        assert Math.abs(heavy - 0.75 * rounds) < 0.02 * rounds;
+    }
+
+    private static void testAliasInvalidation() {
+        WeightedRandomizedQueue<Integer> queue = new WeightedRandomizedQueue<>(new SplittableRandom(4));
+        queue.enqueue(1, 1);
+        queue.prepareStaticSampling();
+        assert queue.sample() == 1;
+        queue.enqueue(2, 1e9);
+        assert queue.alias == null;
+        queue.prepareStaticSampling();
+        int twos = 0;
+        for (int i = 0; i < 1000; i++) {
+            twos += queue.sample() == 2 ? 1 : 0;
+        }
+        assert twos > 990;
+        queue.dequeue();
+        assert queue.alias == null;
+    }
+}
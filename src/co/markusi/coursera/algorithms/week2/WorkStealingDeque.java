@@ -0,0 +1,199 @@
+package co.markusi.coursera.algorithms.week2;
+
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Chase–Lev work-stealing deque. One owner thread adds and removes items at the end, without CAS unless the deque
+ * is down to its last item; any number of thief threads remove items from the front with a CAS on top.
+ * The circular array grows when full; thieves still reading the old array see the same items in it.
+ * Unlike Deque, the remove methods return null rather than throwing when there is nothing to take, since losing
+ * a race for the last item is an expected outcome.
+ */
+public class WorkStealingDeque<Item> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    // index of the next item to steal; only ever increases
+    private final AtomicLong top;
+    // index one past the last item; only written by the owner
+    private volatile long bottom;
+    private volatile AtomicReferenceArray<Item> items;
+
+    // construct an empty deque
+    public WorkStealingDeque() {
+        top = new AtomicLong();
+        bottom = 0;
+        items = new AtomicReferenceArray<>(MIN_CAPACITY);
+    }
+
+    // is the deque empty? only a snapshot while other threads are using it
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // return the number of items on the deque; only a snapshot while other threads are using it
+    public int size() {
+        long size = bottom - top.get();
+        return size < 0 ? 0 : (int) size;
+    }
+
+    // add the item to the end; owner thread only
+    public void addLast(Item item) {
+        if (item == null) {
+            throw new IllegalArgumentException("Null items not supported in this implementation of deque.");
+        }
+        long b = bottom;
+        long t = top.get();
+        AtomicReferenceArray<Item> array = items;
+        if (b - t >= array.length()) {
+            array = grow(array, t, b);
+            items = array;
+        }
+        array.lazySet((int) (b & (array.length() - 1)), item);
+        // the volatile write publishes the item to thieves
+        bottom = b + 1;
+    }
+
+    // remove and return the item from the end, or null if there is none; owner thread only
+    public Item removeLast() {
+        long b = bottom - 1;
+        AtomicReferenceArray<Item> array = items;
+        // claim the slot before looking at top; volatile write then volatile read orders the two
+        bottom = b;
+        long t = top.get();
+        if (t > b) {
+            bottom = b + 1;
+            return null;
+        }
+        int index = (int) (b & (array.length() - 1));
+        Item item = array.get(index);
+        if (t == b) {
+            // last item: race the thieves for it
+            if (!top.compareAndSet(t, t + 1)) {
+                item = null;
+            }
+            bottom = b + 1;
+            return item;
+        }
+        // no thief can be reading this slot any more, so it can be cleared
+        array.lazySet(index, null);
+        return item;
+    }
+
+    // remove and return the item from the front, or null if there is none; any thread
+    public Item removeFirst() {
+        while (true) {
+            long t = top.get();
+            long b = bottom;
+            if (t >= b) {
+                return null;
+            }
+            AtomicReferenceArray<Item> array = items;
+            Item item = array.get((int) (t & (array.length() - 1)));
+            if (top.compareAndSet(t, t + 1)) {
+                return item;
+            }
+        }
+    }
+
+    // copy the live items [t, b) into an array twice the size, at the same logical indices
+    private AtomicReferenceArray<Item> grow(AtomicReferenceArray<Item> array, long t, long b) {
+        AtomicReferenceArray<Item> newArray = new AtomicReferenceArray<>(array.length() * 2);
+        for (long i = t; i < b; i++) {
+            newArray.lazySet((int) (i & (newArray.length() - 1)), array.get((int) (i & (array.length() - 1))));
+        }
+        return newArray;
+    }
+
+    // unit testing (optional)
+    public static void main(String[] args) throws InterruptedException {
+        testOwnerOnly();
+        testConcurrentStealing();
+    }
+
+    private static void testOwnerOnly() {
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        assert deque.removeLast() == null;
+        assert deque.removeFirst() == null;
+        for (int i = 0; i < 100; i++) {
+            deque.addLast(i);
+        }
+        assert deque.size() == 100;
+        assert deque.removeFirst() == 0;
+        assert deque.removeLast() == 99;
+        for (int i = 98; i >= 1; i--) {
+            assert deque.removeLast() == i;
+        }
+        assert deque.isEmpty();
+        assert deque.removeLast() == null;
+    }
+
+    // every item must be taken exactly once, whether by the owner or by a thief
+    private static void testConcurrentStealing() throws InterruptedException {
+        final int items = 1_000_000;
+        final int thieves = 3;
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        AtomicInteger taken = new AtomicInteger();
+        BitSet[] seen = new BitSet[thieves + 1];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[thieves];
+        for (int i = 0; i < thieves; i++) {
+            BitSet thiefSeen = new BitSet(items);
+            seen[i + 1] = thiefSeen;
+            threads[i] = new Thread(() -> {
+                awaitQuietly(start);
+                while (taken.get() < items) {
+                    Integer item = deque.removeFirst();
+                    if (item != null) {
+                        thiefSeen.set(item);
+                        taken.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        BitSet ownerSeen = new BitSet(items);
+        seen[0] = ownerSeen;
+        start.countDown();
+        for (int i = 0; i < items; i++) {
+            deque.addLast(i);
+            if (i % 3 == 0) {
+                Integer item = deque.removeLast();
+                if (item != null) {
+                    ownerSeen.set(item);
+                    taken.incrementAndGet();
+                }
+            }
+        }
+        Integer item = deque.removeLast();
+        while (item != null) {
+            ownerSeen.set(item);
+            taken.incrementAndGet();
+            item = deque.removeLast();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        BitSet all = new BitSet(items);
+        int total = 0;
+        for (BitSet bits : seen) {
+            total += bits.cardinality();
+            all.or(bits);
+        }
+        assert taken.get() == items;
+        assert total == items;
+        assert all.cardinality() == items;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}